@@ -0,0 +1,4 @@
+#!/bin/sh
+java -cp target/CourtDoc-1.0-SNAPSHOT-jar-with-dependencies.jar \
+com.hyperiongray.court.NYAppealPipeline \
+-o ../court_docs/downloads/parsed
@@ -0,0 +1,54 @@
+package com.hyperiongray.court;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The test documents, read once per benchmark. Benchmarks run from the project directory.
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+    public static final String DIR = "test-data/ny_appeals";
+    // as many as there are text documents in DIR, for @OperationsPerInvocation
+    public static final int SIZE = 19;
+
+    public final List<String> names = new ArrayList<>();
+    public final List<String> texts = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        File[] files = new File(DIR).listFiles();
+        if (files == null) {
+            throw new IOException("No documents in " + new File(DIR).getAbsolutePath());
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (!file.getName().endsWith("txt")) continue;
+            names.add(file.getName());
+            texts.add(FileUtils.readFileToString(file).replaceAll("\\|", ""));
+        }
+        if (names.size() != SIZE) {
+            throw new IOException("Expected " + SIZE + " documents in " + new File(DIR).getAbsolutePath());
+        }
+    }
+
+    /**
+     * @return fresh documents, so that nothing computed lazily by an earlier operation is reused
+     */
+    public List<DocumentContext> documents() {
+        List<DocumentContext> docs = new ArrayList<>(names.size());
+        for (int i = 0; i < names.size(); ++i) {
+            docs.add(new DocumentContext(names.get(i), texts.get(i)));
+        }
+        return docs;
+    }
+}
@@ -0,0 +1,75 @@
+package com.hyperiongray.court;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Extraction over all the test documents, one operation per document, so the score is in documents per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @State(Scope.Thread)
+    public static class Parser {
+        NYAppealParse parser;
+
+        @Setup
+        public void setup() {
+            parser = new NYAppealParse();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Field {
+        // no values means all the KEYS, select some with -p field=County,Judges
+        @Param
+        public NYAppealParse.KEYS field;
+
+        NYAppealParse parser;
+        Set<NYAppealParse.KEYS> fields;
+
+        @Setup
+        public void setup() {
+            parser = new NYAppealParse();
+            fields = EnumSet.of(field);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SIZE)
+    public void extractInfo(Parser state, Corpus corpus, Blackhole blackhole) {
+        for (DocumentContext doc : corpus.documents()) {
+            blackhole.consume(state.parser.extractInfo(doc));
+        }
+    }
+
+    /**
+     * One field, together with the fields it depends on.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SIZE)
+    public void field(Field state, Corpus corpus, Blackhole blackhole) {
+        for (DocumentContext doc : corpus.documents()) {
+            blackhole.consume(state.parser.extractInfo(doc, state.fields));
+        }
+    }
+}
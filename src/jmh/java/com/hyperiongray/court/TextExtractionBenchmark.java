@@ -0,0 +1,71 @@
+package com.hyperiongray.court;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Html pages to text, one operation per page, so the score is in documents per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TextExtractionBenchmark {
+    public static final String DIR = "test-data/ny_html";
+    // as many as there are pages in DIR
+    private static final int PAGES = 21;
+
+    @Param({"html", "tika"})
+    public String extractor;
+
+    private TextExtractor textExtractor;
+    private final List<byte[]> pages = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File[] files = new File(DIR).listFiles();
+        if (files == null || files.length != PAGES) {
+            throw new IOException("Expected " + PAGES + " pages in " + new File(DIR).getAbsolutePath());
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            pages.add(FileUtils.readFileToByteArray(file));
+        }
+        textExtractor = "tika".equals(extractor)
+                ? new TikaTextExtractor() : new HtmlTextExtractor(new TikaTextExtractor());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGES)
+    public void extract(Blackhole blackhole) throws IOException {
+        for (byte[] page : pages) {
+            StringWriter text = new StringWriter();
+            textExtractor.extract(new ByteArrayInputStream(page), text);
+            blackhole.consume(text.toString());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.hyperiongray.court;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The helpers the extractors call the most, on inputs taken from the test documents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtilBenchmark {
+    private static final Pattern COUNTY_PATTERN = Pattern.compile("[a-zA-Z]+\\sCounty", Pattern.CASE_INSENSITIVE);
+
+    private NYAppealParse parser;
+    private List<String> textFlows = new ArrayList<>();
+    // what the County field looks up, the way it is written in the documents, and with a typo
+    private List<String> counties = new ArrayList<>();
+    // what sanitize gets, sentences of all lengths
+    private List<String> values = new ArrayList<>();
+
+    @Setup
+    public void setup(Corpus corpus) {
+        parser = new NYAppealParse();
+        for (DocumentContext doc : corpus.documents()) {
+            textFlows.add(doc.getTextFlow());
+            Matcher m = COUNTY_PATTERN.matcher(doc.getText());
+            while (m.find()) {
+                String county = m.group();
+                counties.add(county);
+                counties.add(county.substring(0, 1) + county.substring(2));
+            }
+            values.addAll(NYAppealUtil.splitToSentences(doc.getTextFlow()));
+        }
+    }
+
+    @Benchmark
+    public void splitToSentences(Blackhole blackhole) {
+        for (String text : textFlows) {
+            blackhole.consume(NYAppealUtil.splitToSentences(text));
+        }
+    }
+
+    @Benchmark
+    public void isCounty(Blackhole blackhole) {
+        for (String county : counties) {
+            blackhole.consume(NYAppealUtil.isCounty(county));
+        }
+    }
+
+    @Benchmark
+    public void sanitize(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(parser.sanitize(value));
+        }
+    }
+}
@@ -3,18 +3,36 @@ package com.hyperiongray.court;
 import com.google.common.io.Files;
 import com.hyperiongray.pull.CalCorrectRehabGetPull;
 import com.hyperiongray.pull.GetPull;
+import com.hyperiongray.pull.PullClient;
 import org.apache.commons.cli.*;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.http.HttpStatus;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.util.PDFTextStripper;
 import org.apache.tika.Tika;
 import org.apache.tika.exception.TikaException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.URL;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,18 +47,62 @@ public class CalCorrectRehab {
     private boolean zipThrough;
     private Date startTime;
     private long documentsCollected;
+    private int threads = 1; // PDFs in flight, one means sequential
+    private boolean byPage;
+    private Writer output;
+    private String seriesFileName;
+    private Writer series;
+    // reports already in the series, with the hash of their PDF
+    private CrawlFrontier state;
+    private long reportsAdded;
 
-    private final static String[] regex = {
-            "TOTAL IN-CUSTODY\\s*\\d+,*\\d*",
-            "IN-STATE\\s*\\d+,*\\d*",
-            "INSTITUTIONS/CAMPS\\s*\\d+,*\\d*",
-            "IN-STATE CONTRACT BEDS\\s*\\d+,*\\d*",
-            "DMH STATE HOSPITALS\\s*\\d+,*\\d*",
-            "OUT OF STATE(COCF)\\s*\\d+,*\\d*",
-            "PAROLE\\s*\\d+,*\\d*",
-            "NON-CDC JURISDICTION #4\\s*\\d+,*\\d*",
-            "OTHER POPULATIONS #6\\s*\\d+,*\\d*"
+    // as they are labelled in the summary table of a report, each followed by its figure
+    private final static String[] POPULATIONS = {
+            "TOTAL IN-CUSTODY",
+            "IN-STATE",
+            "INSTITUTIONS/CAMPS",
+            "IN-STATE CONTRACT BEDS",
+            "DMH STATE HOSPITALS",
+            "OUT OF STATE(COCF)",
+            "PAROLE",
+            "NON-CDC JURISDICTION #4",
+            "OTHER POPULATIONS #6"
     };
+    // columns of the time series, one for each of the POPULATIONS
+    private final static String[] COLUMNS = {
+            "TotalInCustody", "InState", "InstitutionsCamps", "InStateContractBeds", "DmhStateHospitals",
+            "OutOfState", "Parole", "NonCdcJurisdiction", "OtherPopulations"
+    };
+    private final static Pattern[] POPULATION_PATTERNS = new Pattern[POPULATIONS.length];
+    // reports are named by the year and month, as in TPOP1Ad1501.pdf
+    private final static Pattern REPORT_MONTH = Pattern.compile("(\\d{2})(\\d{2})\\.pdf$", Pattern.CASE_INSENSITIVE);
+    private final static char SEPARATOR = '|';
+
+    static {
+        for (int i = 0; i < POPULATIONS.length; ++i) {
+            // the figure has thousands separators, as in 117,042
+            POPULATION_PATTERNS[i] = Pattern.compile(Pattern.quote(POPULATIONS[i]) + "\\s*(\\d+(?:,\\d{3})*)");
+        }
+    }
+
+    /**
+     * What was found in one PDF.
+     */
+    static class Report {
+        final String link;
+        // the name of the PDF and then what the population patterns found
+        final List<String> lines = new ArrayList<>();
+        // the first figure of each of the POPULATIONS, null if it was not found
+        final Long[] populations = new Long[POPULATIONS.length];
+        boolean downloaded;
+        long size;
+        String hash = CrawlFrontier.NONE;
+
+        Report(String link) {
+            this.link = link;
+            lines.add("File: " + link);
+        }
+    }
 
     public static void main(String[] args) {
         formOptions();
@@ -63,6 +125,7 @@ public class CalCorrectRehab {
         String stats = "Processing stats:" + "\n" +
                 "Site to analyze: " + siteToAnalyze + "\n" +
                 "Documents processed: " + instance.documentsCollected + "\n" +
+                "Reports added to the series: " + instance.reportsAdded + "\n" +
                 "Processing time (sec): " + instance.getProcessingTime();
         System.out.println(stats);
 
@@ -70,22 +133,31 @@ public class CalCorrectRehab {
 
     private static void formOptions() {
         options = new Options();
-        options.addOption("o", "output", true, "Output file");
+        options.addOption("o", "output", true, "Output file, the lines the population patterns found in each PDF");
+        options.addOption("c", "series", true, "Time series output, a row of population figures for each month. "
+                + "Later runs only add the months published since");
         options.addOption("l", "limit", true, "Limit how many PDF to process (for testing)");
         options.addOption("z", "zipThrough", false, "Zip through the input web site but don't download or analyze PDF's");
+        options.addOption("t", "threads", true, "PDFs downloaded and parsed at the same time, default is 1");
+        options.addOption("g", "byPage", false, "Parse the PDFs a page at a time, stopping once all the population figures are found");
     }
 
     private boolean parseParameters(String[] args) throws ParseException {
         CommandLineParser parser = new GnuParser();
         CommandLine cmd = parser.parse(options, args);
         outputFileName = cmd.getOptionValue("output");
+        seriesFileName = cmd.getOptionValue("series");
         if (cmd.hasOption("limit")) {
             limit = Integer.parseInt(cmd.getOptionValue("limit"));
         }
+        if (cmd.hasOption("threads")) {
+            threads = Integer.parseInt(cmd.getOptionValue("threads"));
+        }
+        byPage = cmd.hasOption("byPage");
         zipThrough = cmd.hasOption("zipThrough");
         if (!zipThrough) {
-            if (outputFileName == null) {
-                System.out.println("Please provide output file name");
+            if (outputFileName == null && seriesFileName == null) {
+                System.out.println("Please provide output or series file name");
                 return false;
             }
         }
@@ -93,49 +165,258 @@ public class CalCorrectRehab {
     }
 
     private void downloadAndParse() throws IOException, TikaException {
+        try (CloseableHttpClient client = PullClient.create(threads + 1, Math.max(2, threads))) {
+            downloadAndParse(client);
+        }
+    }
+
+    private void downloadAndParse(CloseableHttpClient client) throws IOException, TikaException {
         // it is a small collection, get it all
         CalCorrectRehabGetPull pull = new CalCorrectRehabGetPull();
+        pull.setClient(client);
         pull.setStartPage(siteToAnalyze);
         List<String> docCollection = pull.getPdfCollection();
+        if (seriesFileName != null) {
+            openSeries();
+            docCollection = newReports(docCollection, state);
+            logger.info("Reports not in the series yet: {}", docCollection.size());
+        }
+        if (limit > 0 && docCollection.size() > limit) {
+            docCollection = docCollection.subList(0, limit);
+        }
+        // this is only for storage, but for actual results it is not needed
+        new File("test-output/pdf-txt").mkdirs();
         Tika tika = new Tika();
-        for (String pdfLink : docCollection) {
-            ++documentsCollected;
-            if (limit > 0 && documentsCollected > limit) {
-                break;
+        if (outputFileName != null) {
+            new File(outputFileName).getAbsoluteFile().getParentFile().mkdirs();
+            output = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(outputFileName, true), Charset.defaultCharset()));
+        }
+        try {
+            if (threads > 1) {
+                downloadAndParseConcurrently(client, tika, docCollection);
+                return;
             }
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
+            for (String pdfLink : docCollection) {
+                ++documentsCollected;
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                }
+                write(downloadAndParse(client, tika, pdfLink));
             }
-            new File(new File(outputFileName).getParent()).mkdirs();
-            appendToOutput("File: " + pdfLink);
-            String pdfText = tika.parseToString(new URL(linkRoot + "/" + pdfLink));
-            // this is only for storage, but for actual results the next two lines are not needed
-            new File("test-output/pdf-txt").mkdirs();
-            Files.write(pdfText, new File("test-output/pdf-txt/" + new File(pdfLink).getName() + ".txt"), Charset.defaultCharset());
-            // ---------------------
-            writeStats(pdfText);
+        } finally {
+            if (output != null) {
+                output.close();
+            }
+            if (series != null) {
+                series.close();
+                state.close();
+            }
+        }
+    }
+
+    /**
+     * The series is appended to, its state file tells which reports are in it already.
+     */
+    private void openSeries() throws IOException {
+        File seriesFile = new File(seriesFileName).getAbsoluteFile();
+        seriesFile.getParentFile().mkdirs();
+        boolean header = !seriesFile.exists() || seriesFile.length() == 0;
+        state = new CrawlFrontier(new File(seriesFileName + ".state"), true);
+        series = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(seriesFile, true), Charset.defaultCharset()));
+        if (header) {
+            StringBuilder buf = new StringBuilder("Month").append(SEPARATOR).append("File");
+            for (String column : COLUMNS) {
+                buf.append(SEPARATOR).append(column);
+            }
+            series.write(buf.append("\n").toString());
+            series.flush();
+        }
+    }
+
+    /**
+     * @return the reports that are not in the series, each once, including those that failed on earlier runs
+     */
+    static List<String> newReports(List<String> docCollection, CrawlFrontier state) {
+        List<String> reports = new ArrayList<>();
+        for (String pdfLink : new LinkedHashSet<>(docCollection)) {
+            CrawlFrontier.Document done = state.get(pdfLink);
+            if (done == null || !CrawlFrontier.OK.equals(done.status)) {
+                reports.add(pdfLink);
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * The PDFs are downloaded and parsed by a pool of threads, and their lines and rows written in the order of the
+     * collection, as soon as those of the PDFs before them are.
+     */
+    private void downloadAndParseConcurrently(final CloseableHttpClient client, final Tika tika, List<String> docCollection)
+            throws IOException, TikaException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Report>> results = new ArrayList<>();
+            for (final String pdfLink : docCollection) {
+                results.add(pool.submit(new Callable<Report>() {
+                    @Override
+                    public Report call() throws Exception {
+                        Thread.sleep(100);
+                        return downloadAndParse(client, tika, pdfLink);
+                    }
+                }));
+            }
+            for (Future<Report> result : results) {
+                ++documentsCollected;
+                write(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Parsing interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TikaException) {
+                throw (TikaException) e.getCause();
+            }
+            throw new IOException("Parsing failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
+    }
 
+    private Report downloadAndParse(CloseableHttpClient client, Tika tika, String pdfLink)
+            throws IOException, TikaException {
+        Report report = new Report(pdfLink);
+        GetPull pdfPull = new GetPull();
+        pdfPull.setClient(client);
+        pdfPull.setUrl(linkRoot + "/" + pdfLink);
+        byte[] pdf = pdfPull.getResponseBytes();
+        if (pdf == null) {
+            logger.error("Problem downloading {}", pdfLink);
+            return report;
+        }
+        // an error page is not a report, it is tried again on the next run
+        if (pdfPull.getStatusCode() != HttpStatus.SC_OK) {
+            logger.error("Status {} downloading {}", pdfPull.getStatusCode(), pdfLink);
+            return report;
+        }
+        report.downloaded = true;
+        report.size = pdf.length;
+        report.hash = MD5Hash.digest(pdf).toString();
+        String pdfText;
+        if (byPage) {
+            pdfText = findStatsByPage(pdf, report);
+        } else {
+            pdfText = tika.parseToString(new ByteArrayInputStream(pdf));
+            findStats(pdfText, report);
+        }
+        // this is only for storage, but for actual results the next line is not needed
+        Files.write(pdfText, new File("test-output/pdf-txt/" + new File(pdfLink).getName() + ".txt"), Charset.defaultCharset());
+        return report;
     }
 
     private long getProcessingTime() {
         return (new Date().getTime() - startTime.getTime()) / 1000;
     }
 
-    private void writeStats(String pdfText) throws IOException {
-
-        for (String reg: regex) {
-            Matcher m = Pattern.compile(reg).matcher(pdfText);
+    static void findStats(String pdfText, Report report) {
+        for (int i = 0; i < POPULATION_PATTERNS.length; ++i) {
+            Matcher m = POPULATION_PATTERNS[i].matcher(pdfText);
             while (m.find()) {
-                appendToOutput(m.group());
+                found(report, i, m);
+                report.lines.add(m.group());
             }
         }
     }
 
-    private void appendToOutput(String text) throws IOException {
-        Files.append(text + "\n", new File(outputFileName), Charset.defaultCharset());
+    private static void found(Report report, int population, Matcher m) {
+        if (report.populations[population] == null) {
+            report.populations[population] = Long.parseLong(m.group(1).replace(",", ""));
+        }
     }
+
+    /**
+     * The population figures are all in the summary table at the start of a report, so the pages after the one where
+     * the last of them is found are not parsed. The lines are in the order of the patterns, as in findStats().
+     *
+     * @return the text of the pages that were parsed
+     */
+    private String findStatsByPage(byte[] pdf, Report report) throws IOException {
+        List<List<String>> matches = new ArrayList<>();
+        for (int i = 0; i < POPULATION_PATTERNS.length; ++i) {
+            matches.add(new ArrayList<String>());
+        }
+        int missing = POPULATION_PATTERNS.length;
+        StringBuilder pdfText = new StringBuilder();
+        PDDocument document = PDDocument.load(new ByteArrayInputStream(pdf));
+        try {
+            PDFTextStripper stripper = new PDFTextStripper();
+            for (int page = 1; page <= document.getNumberOfPages() && missing > 0; ++page) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String pageText = stripper.getText(document);
+                pdfText.append(pageText);
+                for (int i = 0; i < POPULATION_PATTERNS.length; ++i) {
+                    Matcher m = POPULATION_PATTERNS[i].matcher(pageText);
+                    while (m.find()) {
+                        if (report.populations[i] == null) {
+                            --missing;
+                        }
+                        found(report, i, m);
+                        matches.get(i).add(m.group());
+                    }
+                }
+            }
+        } finally {
+            document.close();
+        }
+        for (List<String> found : matches) {
+            report.lines.addAll(found);
+        }
+        return pdfText.toString();
+    }
+
+    private void write(Report report) throws IOException {
+        if (output != null) {
+            for (String line : report.lines) {
+                output.write(line + "\n");
+            }
+        }
+        if (series == null) {
+            return;
+        }
+        if (report.downloaded) {
+            StringBuilder buf = new StringBuilder(reportMonth(report.link));
+            buf.append(SEPARATOR).append(new File(report.link).getName());
+            for (Long population : report.populations) {
+                buf.append(SEPARATOR).append(population == null ? "" : population.toString());
+            }
+            series.write(buf.append("\n").toString());
+            // the row is out before the state has the report, so a crash can not lose it
+            series.flush();
+            ++reportsAdded;
+        }
+        state.fetched(report.link, report.downloaded ? CrawlFrontier.OK : CrawlFrontier.ERROR, report.size, report.hash);
+    }
+
+    /**
+     * @return the year and month of the report as yyyy-MM, from its name, empty if the name does not have them
+     */
+    static String reportMonth(String pdfLink) {
+        Matcher m = REPORT_MONTH.matcher(pdfLink);
+        if (!m.find()) {
+            return "";
+        }
+        int year = Integer.parseInt(m.group(1));
+        int month = Integer.parseInt(m.group(2));
+        if (month < 1 || month > 12) {
+            return "";
+        }
+        // the archive goes back to the nineties
+        year += year > Calendar.getInstance().get(Calendar.YEAR) % 100 ? 1900 : 2000;
+        return year + "-" + m.group(2);
+    }
+
     private void prepareOutput() {
         if (outputFileName != null) {
             new File(new File(outputFileName).getParent()).mkdirs();
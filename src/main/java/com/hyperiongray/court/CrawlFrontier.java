@@ -0,0 +1,206 @@
+package com.hyperiongray.court;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Where a crawl has got to, so that a stopped crawl can resume. Each index page is logged with the links found on it
+ * when it is expanded, and each document with how its download went. The log is only appended to and flushed line
+ * by line, so a crash loses at most the line being written.
+ * <p/>
+ * Index pages keep their ETag, Last-Modified and body hash, so that a later crawl can ask for them conditionally
+ * and leave alone those that did not change. When a page is expanded again, its last line wins.
+ * <p/>
+ * Stored as tab separated lines, "-" for a missing value:
+ * <pre>
+ * index  url  etag  last-modified  hash
+ * link   url
+ * doc    url  status  size  hash
+ * </pre>
+ */
+public class CrawlFrontier {
+    private static final Logger logger = LoggerFactory.getLogger(CrawlFrontier.class);
+    private static final char TAB = '\t';
+    private static final String INDEX = "index";
+    private static final String LINK = "link";
+    private static final String DOC = "doc";
+
+    public static final String OK = "ok";
+    public static final String ERROR = "error";
+    public static final String SKIPPED = "skipped"; // left out of the sample
+    public static final String NONE = "-";
+
+    private final Map<String, Index> expanded = new HashMap<>();
+    // links in the order they were found, the documents among them are in docs
+    private final Set<String> links = new LinkedHashSet<>();
+    private final Map<String, Document> docs = new HashMap<>();
+    private final Writer log;
+
+    public static class Index {
+        public final String etag;
+        public final String lastModified;
+        public final String hash;
+
+        public Index(String etag, String lastModified, String hash) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    public static class Document {
+        public final String status;
+        public final long size;
+        public final String hash;
+
+        public Document(String status, long size, String hash) {
+            this.status = status;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * @param file   the log
+     * @param resume read what the log has so far and add to it, otherwise start a new one
+     */
+    public CrawlFrontier(File file, boolean resume) throws IOException {
+        boolean brokenLine = false;
+        if (resume && file.exists()) {
+            brokenLine = load(file);
+        }
+        log = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, resume), StandardCharsets.UTF_8));
+        if (brokenLine) {
+            // end the line a crash cut short, or the next one would be lost with it
+            append("");
+        }
+    }
+
+    /**
+     * @return true if the last line has no line break, the crawl having stopped while writing it
+     */
+    private boolean load(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] parts = line.split("" + TAB);
+                try {
+                    if (parts.length == 5 && INDEX.equals(parts[0])) {
+                        expanded.put(parts[1], new Index(parts[2], parts[3], parts[4]));
+                    } else if (parts.length == 2 && LINK.equals(parts[0])) {
+                        links.add(parts[1]);
+                    } else if (parts.length == 5 && DOC.equals(parts[0])) {
+                        docs.put(parts[1], new Document(parts[2], Long.parseLong(parts[3]), parts[4]));
+                    } else {
+                        logger.warn("Skipping bad frontier line: {}", line);
+                    }
+                } catch (NumberFormatException e) {
+                    logger.warn("Skipping bad frontier line: {}", line);
+                }
+            }
+        }
+        return !endsWithLineBreak(file);
+    }
+
+    /**
+     * @return true if the file is empty or its last line has a line break
+     */
+    static boolean endsWithLineBreak(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() == 0) {
+                return true;
+            }
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    /**
+     * @return how the index page was when last expanded, null if it never was
+     */
+    public synchronized Index getIndex(String indexUrl) {
+        return expanded.get(indexUrl);
+    }
+
+    /**
+     * Record the links of an index page, which will not need to be listed again while it stays the same.
+     */
+    public synchronized void expanded(String indexUrl, Index index, List<String> found) throws IOException {
+        for (String link : found) {
+            if (links.add(link)) {
+                append(LINK + TAB + link);
+            }
+        }
+        expanded.put(indexUrl, index);
+        append(INDEX + TAB + indexUrl + TAB + index.etag + TAB + index.lastModified + TAB + index.hash);
+    }
+
+    /**
+     * @return links of expanded index pages that were not downloaded, or failed to
+     */
+    public synchronized List<String> getPending() {
+        List<String> pending = new ArrayList<>();
+        for (String link : links) {
+            Document doc = docs.get(link);
+            if (doc == null || ERROR.equals(doc.status)) {
+                pending.add(link);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return links left out of the sample, which a larger sample may take
+     */
+    public synchronized List<String> getSkipped() {
+        List<String> skipped = new ArrayList<>();
+        for (String link : links) {
+            Document doc = docs.get(link);
+            if (doc != null && SKIPPED.equals(doc.status)) {
+                skipped.add(link);
+            }
+        }
+        return skipped;
+    }
+
+    public synchronized Document get(String link) {
+        return docs.get(link);
+    }
+
+    /**
+     * @param hash of the html, NONE if there is none
+     */
+    public synchronized void fetched(String link, String status, long size, String hash) throws IOException {
+        docs.put(link, new Document(status, size, hash));
+        append(DOC + TAB + link + TAB + status + TAB + size + TAB + hash);
+    }
+
+    private void append(String line) throws IOException {
+        log.write(line + "\n");
+        log.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+}
@@ -0,0 +1,66 @@
+package com.hyperiongray.court;
+
+import org.apache.hadoop.io.MD5Hash;
+
+/**
+ * Which urls a crawl takes, decided by the MD5 of the url alone, so that every run and every machine decides the same.
+ * A sample takes the same documents each time, and N crawlers, each given one of the shards 0/N to N-1/N, take
+ * index pages that do not overlap and together cover them all.
+ */
+public class CrawlShard {
+    public static final CrawlShard ALL = new CrawlShard(0, 1);
+
+    private final int index;
+    private final int count;
+
+    /**
+     * @param index of this shard, from 0 to count - 1
+     * @param count of shards
+     */
+    public CrawlShard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("No shard " + index + " of " + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * @param shard as "i/N", for shard i of N
+     */
+    public static CrawlShard parse(String shard) {
+        String[] parts = shard.split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Shard should be i/N: " + shard);
+        }
+        return new CrawlShard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+
+    public boolean takes(String url) {
+        return count == 1 || (hash(url) & Long.MAX_VALUE) % count == index;
+    }
+
+    /**
+     * @param sample fraction of the urls to take, i.e. .01 for 1%
+     * @return true for the urls in the sample, the same ones every time
+     */
+    public static boolean sampled(String url, float sample) {
+        return sample >= 1 || fraction(url) < sample;
+    }
+
+    /**
+     * @return the hash of the url, evenly spread from 0 to 1
+     */
+    static double fraction(String url) {
+        return (hash(url) >>> 11) / (double) (1L << 53);
+    }
+
+    private static long hash(String url) {
+        return MD5Hash.digest(url).halfDigest();
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,53 @@
+package com.hyperiongray.court;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Files of a directory, in the order of their names, so that the output does not depend on the file system.
+ * Only the paths are listed up front, the files are read when they are parsed.
+ */
+public class DirectoryDocumentSource extends DocumentSource {
+    private final Iterator<Path> paths;
+
+    public DirectoryDocumentSource(File dir) throws IOException {
+        List<Path> list = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            for (Path path : stream) {
+                list.add(path);
+            }
+        }
+        Collections.sort(list);
+        paths = list.iterator();
+    }
+
+    @Override
+    public Entry next() {
+        if (!paths.hasNext()) {
+            return null;
+        }
+        final Path path = paths.next();
+        return new Entry(path.getFileName().toString()) {
+            @Override
+            public long getSize() throws IOException {
+                return Files.size(path);
+            }
+
+            @Override
+            public byte[] getContent() throws IOException {
+                return Files.readAllBytes(path);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,256 @@
+package com.hyperiongray.court;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The different views of one document that the field extractors work on.
+ * Each view is derived from the text on first use and then reused by all the fields,
+ * so a document is flowed, split to sentences, etc. only once.
+ * A context belongs to the thread that parses the document and is not meant to be shared.
+ * <p/>
+ * The name, text and time budget are fixed when the context is made. What changes afterwards is the views computed
+ * on first use, and the hits the fields add to, which travel with the document because the extractors get nothing
+ * else of it.
+ */
+public class DocumentContext {
+    /**
+     * Regions of a decision, in the order they come: the caption with the parties, the counsel,
+     * the body starting with what is appealed from, and the panel of judges at the end.
+     */
+    public enum Zone {
+        CAPTION, COUNSEL, BODY, PANEL
+    }
+
+    // plain strings, so that zoning is a few indexOf() calls
+    private static final String[] BODY_MARKERS = {"Appeal from", "Appeals from", "appeals from", "Appeal and cross appeal",
+            "Appeals and cross appeals", "OPINION OF THE COURT", "It is hereby ordered", "Ordered that"};
+    private static final String[] COUNSEL_MARKERS = {"APPEARANCES OF COUNSEL", "of counsel", "District Attorney"};
+    private static final String[] PANEL_MARKERS = {"Present—", "Present–", "Present:", "concur"};
+
+    private final String name;
+    private final String text;
+    private final TimeBudget timeBudget;
+
+    private String textFlow;
+    private String lowerCase;
+    private SentenceSpans sentences;
+    private int[] lineStarts;
+    private PhraseAutomaton phraseAutomaton;
+    private String[][] phraseMatches;
+    // patterns looked for in the text by more than one field
+    private final Map<Pattern, Boolean> found = new HashMap<>();
+    private final List<String> hits = new ArrayList<>();
+    // zone starts, then the text length; empty if the document could not be zoned
+    private int[] zones;
+
+    public DocumentContext(String name, String text) {
+        this(name, text, null);
+    }
+
+    /**
+     * @param timeBudget limits the time of the matchers, null for no limit
+     */
+    public DocumentContext(String name, String text, TimeBudget timeBudget) {
+        this.name = name;
+        this.text = text;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * @return file name of the document
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the document text as read
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the text with all line breaks replaced by spaces
+     */
+    public String getTextFlow() {
+        if (textFlow == null) {
+            textFlow = text.replaceAll("\\r\\n|\\r|\\n", " ");
+        }
+        return textFlow;
+    }
+
+    /**
+     * @return lower case text. A few characters change length when lower cased, so an offset in it is only an offset
+     * in the text if the two have the same length.
+     */
+    public String getLowerCase() {
+        if (lowerCase == null) {
+            lowerCase = text.toLowerCase(Locale.ROOT);
+        }
+        return lowerCase;
+    }
+
+    /**
+     * @return sentence boundaries in the flowed text
+     */
+    public SentenceSpans getSentences() {
+        if (sentences == null) {
+            sentences = NYAppealUtil.sentenceSpans(getTextFlow());
+        }
+        return sentences;
+    }
+
+    public TimeBudget getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * @param input the text or one of its views
+     * @return matcher that throws TimeBudgetExceededException once the time budget is over
+     */
+    public Matcher matcher(Pattern pattern, CharSequence input) {
+        if (timeBudget == null) {
+            return pattern.matcher(input);
+        }
+        return pattern.matcher(new InterruptibleCharSequence(input, timeBudget, pattern));
+    }
+
+    /**
+     * @param counter name of a Stats counter a field of the document added to
+     */
+    public void addHit(String counter) {
+        hits.add(counter);
+    }
+
+    /**
+     * @return names of the Stats counters the fields of the document added to, so far
+     */
+    public List<String> getHits() {
+        return Collections.unmodifiableList(hits);
+    }
+
+    /**
+     * @return true if the pattern is found in the text, which is only searched the first time
+     */
+    public boolean find(Pattern pattern) {
+        Boolean result = found.get(pattern);
+        if (result == null) {
+            result = matcher(pattern, text).find();
+            found.put(pattern, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return first matches of the automaton phrases in the text
+     */
+    public String[][] getPhraseMatches(PhraseAutomaton automaton) {
+        if (phraseMatches == null || phraseAutomaton != automaton) {
+            phraseMatches = automaton.firstMatches(text);
+            phraseAutomaton = automaton;
+        }
+        return phraseMatches;
+    }
+
+    /**
+     * @return true if the zones were found. They are good for the text and the flowed text alike,
+     * so a document with \r line breaks, which flowing shortens, is not zoned.
+     */
+    public boolean isZoned() {
+        return getZones().length > 0;
+    }
+
+    /**
+     * @return offset where the zone starts, 0 if the document is not zoned
+     */
+    public int getZoneStart(Zone zone) {
+        return isZoned() ? zones[zone.ordinal()] : 0;
+    }
+
+    /**
+     * @return offset just past the zone, the text length if the document is not zoned
+     */
+    public int getZoneEnd(Zone zone) {
+        return isZoned() ? zones[zone.ordinal() + 1] : text.length();
+    }
+
+    // zones start at the beginning of the line with their first marker, the panel with its last one
+    private int[] getZones() {
+        if (zones == null) {
+            zones = new int[0];
+            if (text.indexOf('\r') >= 0) return zones;
+            int body = firstOf(BODY_MARKERS, text.length());
+            if (body < 0) return zones;
+            int bodyStart = getLineStart(getLineOf(body));
+            int counsel = firstOf(COUNSEL_MARKERS, bodyStart);
+            int counselStart = counsel >= 0 ? getLineStart(getLineOf(counsel)) : bodyStart;
+            int panel = -1;
+            for (String marker : PANEL_MARKERS) {
+                panel = Math.max(panel, text.lastIndexOf(marker));
+            }
+            int panelStart = panel > body ? getLineStart(getLineOf(panel)) : text.length();
+            zones = new int[]{0, counselStart, bodyStart, panelStart, text.length()};
+        }
+        return zones;
+    }
+
+    // first offset where a marker starts and ends before the limit, -1 if there is none
+    private int firstOf(String[] markers, int limit) {
+        int first = -1;
+        for (String marker : markers) {
+            int index = text.indexOf(marker);
+            if (index >= 0 && index + marker.length() <= limit && (first < 0 || index < first)) {
+                first = index;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @param line zero based line number
+     * @return offset of the first character of the line
+     */
+    public int getLineStart(int line) {
+        return getLineStarts()[line];
+    }
+
+    /**
+     * @param offset offset in the text
+     * @return zero based number of the line containing the offset
+     */
+    public int getLineOf(int offset) {
+        int line = Arrays.binarySearch(getLineStarts(), offset);
+        return line >= 0 ? line : -line - 2;
+    }
+
+    private int[] getLineStarts() {
+        if (lineStarts == null) {
+            int[] starts = new int[16];
+            int count = 1;
+            int length = text.length();
+            for (int i = 0; i < length; ++i) {
+                char ch = text.charAt(i);
+                if (ch == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                    ++i;
+                } else if (ch != '\r' && ch != '\n') {
+                    continue;
+                }
+                if (i + 1 < length) {
+                    if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+                    starts[count++] = i + 1;
+                }
+            }
+            lineStarts = Arrays.copyOf(starts, count);
+        }
+        return lineStarts;
+    }
+}
@@ -0,0 +1,96 @@
+package com.hyperiongray.court;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Documents to parse, read one at a time: the files of a directory, or the entries of a .tar, .tar.gz or .zip
+ * archive, which are streamed without being extracted to disk.
+ */
+public abstract class DocumentSource implements Closeable {
+    // paths of the archive entries read so far, by the name the output knows them by
+    private final Map<String, String> archived = new HashMap<>();
+
+    /**
+     * A document of the source. Entries of archives are read into memory when they are reached, since the archive
+     * stream moves on; files of a directory are only read when their content is asked for.
+     */
+    public abstract static class Entry {
+        private final String name;
+
+        protected Entry(String name) {
+            // archive entries may have directories in front, but the output only names the file, see archiveEntry()
+            this.name = name.substring(name.lastIndexOf('/') + 1);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public abstract long getSize() throws IOException;
+
+        public abstract byte[] getContent() throws IOException;
+    }
+
+    /**
+     * @return the source for a directory or an archive, chosen by the file extension
+     */
+    public static DocumentSource open(String path) throws IOException {
+        String name = path.toLowerCase();
+        if (name.endsWith(".tar")) {
+            return new TarDocumentSource(new File(path), false);
+        }
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return new TarDocumentSource(new File(path), true);
+        }
+        if (name.endsWith(".zip")) {
+            return new ZipDocumentSource(new File(path));
+        }
+        return new DirectoryDocumentSource(new File(path));
+    }
+
+    /**
+     * @return the next document, or null after the last one
+     */
+    public abstract Entry next() throws IOException;
+
+    /**
+     * @param path    of the entry in the archive
+     * @param content of the entry, read from the archive stream
+     * @throws IOException if an earlier entry, in another directory, has the same file name, as the rows and the
+     *                     manifest could not tell the two apart
+     */
+    protected Entry archiveEntry(String path, byte[] content) throws IOException {
+        Entry entry = new InMemoryEntry(path, content);
+        String earlier = archived.put(entry.getName(), path);
+        if (earlier != null) {
+            throw new IOException("Archive entries " + earlier + " and " + path + " have the same file name");
+        }
+        return entry;
+    }
+
+    /**
+     * Entry whose content has already been read.
+     */
+    protected static class InMemoryEntry extends Entry {
+        private final byte[] content;
+
+        protected InMemoryEntry(String name, byte[] content) {
+            super(name);
+            this.content = content;
+        }
+
+        @Override
+        public long getSize() {
+            return content.length;
+        }
+
+        @Override
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
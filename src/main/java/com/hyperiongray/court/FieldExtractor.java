@@ -0,0 +1,31 @@
+package com.hyperiongray.court;
+
+import java.util.Map;
+
+/**
+ * Extracts one field of the NY appeal parse output from a document.
+ * Extractors are registered with NYAppealParse under the key of their field. An extractor that reads the values
+ * of other fields declares them as dependencies, and these are extracted first, even when they are not output.
+ */
+public abstract class FieldExtractor {
+    private final NYAppealParse.KEYS[] dependencies;
+
+    protected FieldExtractor(NYAppealParse.KEYS... dependencies) {
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * @return fields whose values this extractor reads
+     */
+    public NYAppealParse.KEYS[] getDependencies() {
+        return dependencies.clone();
+    }
+
+    /**
+     * Extract the field from the document and put its value into info, keyed by the field name.
+     *
+     * @param doc  document to parse
+     * @param info values extracted so far, including all the dependencies
+     */
+    public abstract void extract(DocumentContext doc, Map<String, String> info);
+}
@@ -0,0 +1,100 @@
+package com.hyperiongray.court;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Case insensitive lookup of names within edit distance 1, such as OCR'ed county names.
+ * Uses a symmetric deletion dictionary: every name is indexed under itself and under each of its
+ * one-character deletions, so a query only needs to look up itself and its own deletions,
+ * instead of computing the distance to every name.
+ */
+public class FuzzyIndex {
+    private final List<String> names;
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> exact = new HashMap<>();
+    private final Map<String, List<Integer>> deletions = new HashMap<>();
+
+    /**
+     * @param names canonical names, in order of preference
+     */
+    public FuzzyIndex(List<String> names) {
+        this.names = new ArrayList<>(names);
+        for (int i = 0; i < this.names.size(); ++i) {
+            String key = this.names.get(i).toLowerCase();
+            keys.add(key);
+            if (!exact.containsKey(key)) {
+                exact.put(key, i);
+            }
+            index(key, i);
+            for (int d = 0; d < key.length(); ++d) {
+                index(deleteAt(key, d), i);
+            }
+        }
+    }
+
+    /**
+     * @param s name, possibly misspelled
+     * @return the canonical name equal to s, or else the first one within one edit of s; null if there is none
+     */
+    public String find(String s) {
+        String key = s.toLowerCase();
+        Integer match = exact.get(key);
+        if (match != null) {
+            return names.get(match);
+        }
+        int best = check(key, deletions.get(key), Integer.MAX_VALUE);
+        for (int d = 0; d < key.length(); ++d) {
+            best = check(key, deletions.get(deleteAt(key, d)), best);
+        }
+        return best == Integer.MAX_VALUE ? null : names.get(best);
+    }
+
+    private void index(String key, int name) {
+        List<Integer> list = deletions.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            deletions.put(key, list);
+        }
+        if (list.isEmpty() || list.get(list.size() - 1) != name) {
+            list.add(name);
+        }
+    }
+
+    // candidates sharing a deletion may still be two edits away, so verify
+    private int check(String key, List<Integer> candidates, int best) {
+        if (candidates != null) {
+            for (int candidate : candidates) {
+                if (candidate < best && withinOneEdit(key, keys.get(candidate))) {
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static String deleteAt(String s, int index) {
+        return s.substring(0, index) + s.substring(index + 1);
+    }
+
+    static boolean withinOneEdit(String a, String b) {
+        if (a.length() > b.length()) {
+            String t = a;
+            a = b;
+            b = t;
+        }
+        if (b.length() - a.length() > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < a.length() && a.charAt(i) == b.charAt(i)) ++i;
+        if (i == a.length()) {
+            return true;
+        }
+        // skip the first difference, the rest must be equal
+        int skip = a.length() == b.length() ? 1 : 0;
+        return a.regionMatches(i + skip, b, i + 1, a.length() - i - skip);
+    }
+}
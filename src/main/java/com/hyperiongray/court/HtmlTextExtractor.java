@@ -0,0 +1,470 @@
+package com.hyperiongray.court;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Entities;
+
+/**
+ * Html to text in one pass over the page, for the decision pages of the NY courts. The text is that of Tika's html
+ * parser: the body as written in the page, a line break after each paragraph, row and other block, a tab before each
+ * cell and list item, white space between rows and list items dropped, unclosed paragraphs, cells and items closed
+ * by the next one. It is written out as the page is read, without detection, a DOM or SAX events.
+ * <p/>
+ * Anything that does not start as html with a declared charset or a byte order mark, such as a PDF, goes to the
+ * fallback. So does a page that leaves its charset to be guessed: its first bytes may pass for UTF-8 and the rest not.
+ */
+public class HtmlTextExtractor implements TextExtractor {
+    private static final int SNIFF_BYTES = 8 * 1024;
+    private static final Pattern HTML_START = Pattern.compile("^\\s*<(!doctype\\s+html|html|head|body|title)[\\s>]",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern CHARSET_PATTERN = Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?([\\w.:-]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    // tab before, line break after, as Tika's XHTMLContentHandler writes them
+    private static final Set<String> INDENT = set("li", "dd", "dt", "td", "th", "frame");
+    private static final Set<String> ENDLINE = set("p", "h1", "h2", "h3", "h4", "h5", "h6", "div", "ul", "ol", "dl",
+            "pre", "hr", "blockquote", "address", "fieldset", "table", "form", "noscript", "li", "dt", "dd", "noframes",
+            "br", "tr", "select", "option");
+    // elements with no text of their own, the white space in them is dropped
+    private static final Set<String> NO_TEXT = set("html", "head", "table", "thead", "tbody", "tfoot", "tr",
+            "colgroup", "ul", "ol", "dl", "select", "optgroup", "frameset");
+    private static final Set<String> EMPTY = set("area", "base", "basefont", "br", "col", "embed", "frame", "hr",
+            "img", "input", "isindex", "link", "meta", "param", "wbr");
+    private static final Set<String> IN_HEAD = set("title", "meta", "link", "style", "script", "base");
+    // their content is not text, and may hold a '<'
+    private static final Set<String> RAW = set("script", "style");
+    // blocks close an open paragraph, which may still hold a table, as TagSoup has it
+    private static final Set<String> BLOCKS = set("p", "h1", "h2", "h3", "h4", "h5", "h6", "div", "ul", "ol", "dl",
+            "pre", "hr", "blockquote", "address", "fieldset", "form", "center");
+    private static final Set<String> PARAGRAPH = set("p");
+    private static final Set<String> PARAGRAPH_BOUNDS = set("td", "th", "li", "dd", "dt", "div", "blockquote",
+            "table", "body");
+    private static final Set<String> CELLS = set("td", "th");
+    private static final Set<String> CELL_BOUNDS = set("tr", "table");
+    private static final Set<String> ROWS = set("tr");
+    private static final Set<String> ROW_BOUNDS = set("table", "thead", "tbody", "tfoot");
+    private static final Set<String> ROW_GROUPS = set("thead", "tbody", "tfoot");
+    private static final Set<String> ROW_GROUP_BOUNDS = set("table");
+    private static final Set<String> ITEMS = set("li");
+    private static final Set<String> ITEM_BOUNDS = set("ul", "ol");
+    private static final Set<String> DEFINITIONS = set("dt", "dd");
+    private static final Set<String> DEFINITION_BOUNDS = set("dl");
+    private static final Set<String> OPTIONS = set("option");
+    private static final Set<String> OPTION_BOUNDS = set("select");
+
+    private final TextExtractor fallback;
+
+    public HtmlTextExtractor(TextExtractor fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void extract(InputStream stream, Writer text) throws IOException {
+        InputStream in = stream.markSupported() ? stream : new BufferedInputStream(stream, SNIFF_BYTES);
+        in.mark(SNIFF_BYTES);
+        byte[] start = new byte[SNIFF_BYTES];
+        int length = 0;
+        int n;
+        while (length < start.length && (n = in.read(start, length, start.length - length)) > 0) {
+            length += n;
+        }
+        in.reset();
+        int bom = length >= 3 && (start[0] & 0xff) == 0xef && (start[1] & 0xff) == 0xbb && (start[2] & 0xff) == 0xbf ? 3 : 0;
+        String prefix = new String(start, bom, length - bom, StandardCharsets.ISO_8859_1);
+        Charset charset = bom > 0 ? StandardCharsets.UTF_8 : declaredCharset(prefix);
+        if (charset == null || !HTML_START.matcher(prefix).find()) {
+            fallback.extract(in, text);
+            return;
+        }
+        in.skip(bom);
+        new Page(new InputStreamReader(in, charset), text).read();
+    }
+
+    private static Charset declaredCharset(String prefix) {
+        Matcher m = CHARSET_PATTERN.matcher(prefix);
+        if (!m.find()) return null;
+        try {
+            return Charset.forName(m.group(1));
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+
+    private static Set<String> set(String... names) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(names)));
+    }
+
+    /**
+     * One page being read. Text between two tags is held until the next tag, to tell if it is only white space.
+     */
+    private static class Page {
+        private static final int EOF = -1;
+
+        private final Reader reader;
+        private final Writer out;
+        private final char[] buffer = new char[8 * 1024];
+        private int position;
+        private int limit;
+        private int pushedBack = EOF;
+
+        private final List<String> open = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private boolean blank = true;
+        private int written;
+        private boolean full;
+
+        Page(Reader reader, Writer out) {
+            this.reader = reader;
+            this.out = out;
+        }
+
+        void read() throws IOException {
+            int c;
+            while (!full && (c = next()) != EOF) {
+                if (c == '<') {
+                    readTag();
+                } else if (c == '&') {
+                    readEntity();
+                } else {
+                    if (blank && !isSpace(c)) blank = false;
+                    text.append((char) c);
+                }
+            }
+            flushText();
+            while (!open.isEmpty() && !full) {
+                pop();
+            }
+        }
+
+        private void readTag() throws IOException {
+            int c = next();
+            if (c == '!') {
+                if (next() == '-') {
+                    if (next() == '-') {
+                        skipPast("-->");
+                        return;
+                    }
+                }
+                skipPast(">");
+            } else if (c == '?') {
+                skipPast(">");
+            } else if (c == '/') {
+                String name = readName();
+                skipPast(">");
+                if (!name.isEmpty()) {
+                    flushText();
+                    end(name);
+                }
+            } else if (isLetter(c)) {
+                pushBack(c);
+                String name = readName();
+                boolean selfClosing = skipAttributes();
+                flushText();
+                start(name, selfClosing);
+            } else {
+                // not a tag after all
+                blank = false;
+                text.append('<');
+                pushBack(c);
+            }
+        }
+
+        private void start(String name, boolean selfClosing) throws IOException {
+            if (name.equals("body") || (!IN_HEAD.contains(name) && !name.equals("html") && !name.equals("head"))) {
+                // the head ends where the body starts
+                int head = open.lastIndexOf("head");
+                if (head >= 0) {
+                    closeFrom(head);
+                }
+            }
+            if (RAW.contains(name)) {
+                if (!selfClosing) skipPastIgnoringCase("</" + name);
+                return;
+            }
+            closeImplied(name);
+            if (INDENT.contains(name) && !isInHead()) {
+                write("\t");
+            }
+            if (EMPTY.contains(name) || selfClosing) {
+                if (ENDLINE.contains(name) && !isInHead()) {
+                    write("\n");
+                }
+                return;
+            }
+            open.add(name);
+        }
+
+        private void end(String name) throws IOException {
+            int index = open.lastIndexOf(name);
+            if (index >= 0) {
+                closeFrom(index);
+            }
+        }
+
+        private void closeImplied(String name) throws IOException {
+            if (BLOCKS.contains(name)) {
+                close(PARAGRAPH, PARAGRAPH_BOUNDS);
+            }
+            switch (name) {
+                case "li":
+                    close(ITEMS, ITEM_BOUNDS);
+                    break;
+                case "dt":
+                case "dd":
+                    close(DEFINITIONS, DEFINITION_BOUNDS);
+                    break;
+                case "tr":
+                    close(ROWS, ROW_BOUNDS);
+                    break;
+                case "thead":
+                case "tbody":
+                case "tfoot":
+                    close(ROW_GROUPS, ROW_GROUP_BOUNDS);
+                    break;
+                case "td":
+                case "th":
+                    close(CELLS, CELL_BOUNDS);
+                    break;
+                case "option":
+                    close(OPTIONS, OPTION_BOUNDS);
+                    break;
+                default:
+            }
+        }
+
+        /**
+         * Close the innermost open element of the names given, with all in it, unless one of the bounds is closer.
+         */
+        private void close(Set<String> names, Set<String> bounds) throws IOException {
+            for (int i = open.size() - 1; i >= 0; --i) {
+                String element = open.get(i);
+                if (names.contains(element)) {
+                    closeFrom(i);
+                    return;
+                }
+                if (bounds.contains(element)) return;
+            }
+        }
+
+        private void closeFrom(int index) throws IOException {
+            while (open.size() > index && !full) {
+                pop();
+            }
+        }
+
+        private void pop() throws IOException {
+            boolean inHead = isInHead();
+            String name = open.remove(open.size() - 1);
+            if (ENDLINE.contains(name) && !inHead) {
+                write("\n");
+            }
+        }
+
+        private boolean isInHead() {
+            return open.contains("head");
+        }
+
+        private void flushText() throws IOException {
+            if (text.length() == 0) return;
+            String top = open.isEmpty() ? null : open.get(open.size() - 1);
+            if (!isInHead() && !(blank && (top == null || NO_TEXT.contains(top)))) {
+                write(text);
+            }
+            text.setLength(0);
+            blank = true;
+        }
+
+        private void write(CharSequence chars) throws IOException {
+            int length = chars.length();
+            if (written + length > MAX_LENGTH) {
+                length = MAX_LENGTH - written;
+                full = true;
+            }
+            out.append(chars, 0, length);
+            written += length;
+        }
+
+        private void readEntity() throws IOException {
+            blank = false;
+            int c = next();
+            if (c == '#') {
+                readNumericEntity();
+                return;
+            }
+            StringBuilder name = new StringBuilder();
+            while (isLetter(c) || isDigit(c)) {
+                name.append((char) c);
+                c = next();
+            }
+            boolean semicolon = c == ';';
+            if (!semicolon) pushBack(c);
+            Character decoded = null;
+            if (name.length() > 0) {
+                String key = name.toString();
+                if (Entities.isNamedEntity(key)) {
+                    decoded = Entities.getCharacterByName(key);
+                } else if (Entities.isNamedEntity(key.toLowerCase())) {
+                    decoded = Entities.getCharacterByName(key.toLowerCase());
+                }
+            }
+            if (decoded != null) {
+                text.append(decoded.charValue());
+            } else {
+                text.append('&').append(name);
+                if (semicolon) text.append(';');
+            }
+        }
+
+        private void readNumericEntity() throws IOException {
+            int c = next();
+            boolean hex = c == 'x' || c == 'X';
+            StringBuilder digits = new StringBuilder();
+            if (hex) c = next();
+            while (hex ? isHexDigit(c) : isDigit(c)) {
+                digits.append((char) c);
+                c = next();
+            }
+            boolean semicolon = c == ';';
+            if (!semicolon) pushBack(c);
+            int code = -1;
+            if (digits.length() > 0 && digits.length() <= 7) {
+                code = Integer.parseInt(digits.toString(), hex ? 16 : 10);
+            }
+            if (code >= 0 && Character.isValidCodePoint(code)) {
+                text.appendCodePoint(code);
+            } else {
+                text.append("&#").append(hex ? "x" : "").append(digits);
+                if (semicolon) text.append(';');
+            }
+        }
+
+        private String readName() throws IOException {
+            StringBuilder name = new StringBuilder();
+            int c = next();
+            while (isLetter(c) || isDigit(c) || c == ':' || c == '_' || c == '-') {
+                name.append(Character.toLowerCase((char) c));
+                c = next();
+            }
+            pushBack(c);
+            return name.toString();
+        }
+
+        /**
+         * @return true if the tag ends with "/>"
+         */
+        private boolean skipAttributes() throws IOException {
+            int quote = 0;
+            int last = 0;
+            int c;
+            while ((c = next()) != EOF) {
+                if (quote != 0) {
+                    if (c == quote) quote = 0;
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return last == '/';
+                }
+                if (!isSpace(c)) last = c;
+            }
+            return false;
+        }
+
+        private void skipPast(String end) throws IOException {
+            int matched = 0;
+            int c;
+            while (matched < end.length() && (c = next()) != EOF) {
+                matched = advance(end, matched, c);
+            }
+        }
+
+        // to the end of the closing tag
+        private void skipPastIgnoringCase(String end) throws IOException {
+            int matched = 0;
+            int c;
+            while (matched < end.length() && (c = next()) != EOF) {
+                matched = advance(end, matched, Character.toLowerCase((char) c));
+            }
+            skipPast(">");
+        }
+
+        /**
+         * @return how much of end is matched once c follows the matched start of it, which is the longest start of
+         * end the read characters still end with, so that "--->" closes a comment
+         */
+        private int advance(String end, int matched, int c) {
+            for (int length = matched + 1; length > 0; --length) {
+                if (end.charAt(length - 1) == c && end.regionMatches(0, end, matched - length + 1, length - 1)) {
+                    return length;
+                }
+            }
+            return 0;
+        }
+
+        // line breaks come out as '\n', whether they are "\r\n", '\r' or '\n'
+        private int next() throws IOException {
+            if (pushedBack != EOF) {
+                int c = pushedBack;
+                pushedBack = EOF;
+                return c;
+            }
+            int c = readChar();
+            if (c == '\r') {
+                c = readChar();
+                if (c != '\n' && c != EOF) {
+                    --position;
+                }
+                return '\n';
+            }
+            return c;
+        }
+
+        private int readChar() throws IOException {
+            if (position == limit) {
+                limit = reader.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return EOF;
+                }
+            }
+            return buffer[position++];
+        }
+
+        private void pushBack(int c) {
+            pushedBack = c;
+        }
+
+        private static boolean isSpace(int c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+        }
+
+        private static boolean isLetter(int c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+
+        private static boolean isDigit(int c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isHexDigit(int c) {
+            return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+        }
+    }
+}
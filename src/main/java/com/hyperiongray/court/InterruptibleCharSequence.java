@@ -0,0 +1,47 @@
+package com.hyperiongray.court;
+
+import java.util.regex.Pattern;
+
+/**
+ * Text for a matcher that stops it once the time budget is over, by throwing from charAt().
+ * The clock is only read every CHECK_INTERVAL characters, which keeps the cost low.
+ */
+public class InterruptibleCharSequence implements CharSequence {
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final CharSequence text;
+    private final TimeBudget budget;
+    private final Pattern pattern;
+    private int reads;
+
+    public InterruptibleCharSequence(CharSequence text, TimeBudget budget, Pattern pattern) {
+        this.text = text;
+        this.budget = budget;
+        this.pattern = pattern;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (++reads == CHECK_INTERVAL) {
+            reads = 0;
+            budget.check(pattern);
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    // matched groups come out through here, they need no checking
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
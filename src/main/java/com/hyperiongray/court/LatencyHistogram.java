@@ -0,0 +1,74 @@
+package com.hyperiongray.court;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies in nanoseconds, counted in logarithmic buckets: four per power of two, so a percentile is off by
+ * at most a quarter. Recording is a few atomic increments, safe from any number of threads.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) ;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param fraction such as 0.99
+     * @return the latency that fraction of the recorded ones do not exceed, rounded up to its bucket, 0 if none
+     */
+    public long percentile(double fraction) {
+        long target = (long) Math.ceil(fraction * count.get());
+        if (target < 1) target = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+        int sub = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
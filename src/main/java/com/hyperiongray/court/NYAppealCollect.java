@@ -1,34 +1,65 @@
 package com.hyperiongray.court;
 
-import com.google.common.io.Files;
 import com.hyperiongray.pull.GetPull;
+import com.hyperiongray.pull.HostLimiter;
+import com.hyperiongray.pull.PullClient;
 import org.apache.commons.cli.*;
 import org.apache.commons.io.FileUtils;
-import org.apache.tika.Tika;
-import org.apache.tika.exception.TikaException;
-import org.apache.tika.metadata.Metadata;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.http.HttpStatus;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class NYAppealCollect {
+    public static final String FRONTIER = "frontier.log";
+    private static final String NONE = CrawlFrontier.NONE;
 
     private static final Logger logger = LoggerFactory.getLogger(NYAppealCollect.class);
     private static Options options;
     private String outputDir;
     private Date startTime;
-    private int documentsCollected;
+    private final AtomicInteger documentsCollected = new AtomicInteger();
+    private final AtomicInteger indexPagesUnchanged = new AtomicInteger();
     private boolean verify;
     private float sample = 1; // default is to download all
+    private CrawlShard shard = CrawlShard.ALL;
     private int delay = 20; // milliseconds
+    private int threads = 1; // requests in flight, one means sequential
+    private int perHost = 4;
+    private HostLimiter hostLimiter;
+    private CloseableHttpClient client;
+    private boolean resume;
+    private CrawlFrontier frontier;
+    // documents queued per document thread, before the index pages wait for them
+    private static final int PENDING_PER_THREAD = 16;
+    private TextExtractor textExtractor = new HtmlTextExtractor(new TikaTextExtractor());
 
     public static void main(String[] args) {
         formOptions();
@@ -49,14 +80,20 @@ public class NYAppealCollect {
             e.printStackTrace();
         }
         logger.info("Processing stats:");
-        logger.info("Documents processed: {}", instance.documentsCollected);
+        logger.info("Documents processed: {}", instance.documentsCollected.get());
+        logger.info("Index pages unchanged: {}", instance.indexPagesUnchanged.get());
     }
 
     private static void formOptions() {
         options = new Options();
         options.addOption("o", "outputDir", true, "Output directory");
         options.addOption("v", "verify", false, "Verify that we are hitting the right urls, do no downloads");
-        options.addOption("s", "sample", true, "Sample the data, i.e. .01 means download only 1% of all files");
+        options.addOption("s", "sample", true, "Sample the data, i.e. .01 means download only 1% of all files, the same ones each run");
+        options.addOption("n", "shard", true, "Crawl only shard i/N of the index pages, for N crawlers on N machines, i from 0 to N-1");
+        options.addOption("t", "threads", true, "Requests in flight, a quarter for index pages and the rest for documents, default is 1");
+        options.addOption("p", "perHost", true, "Requests in flight to one host, default is 4");
+        options.addOption("r", "resume", false, "Continue a stopped crawl in the output directory, or bring it up to date, skipping documents already downloaded");
+        options.addOption("a", "tika", false, "Turn all documents into text with Tika, not only those that are not html");
     }
 
     private boolean parseParameters(String[] args) throws ParseException {
@@ -64,12 +101,36 @@ public class NYAppealCollect {
         CommandLine cmd = parser.parse(options, args);
         outputDir = cmd.getOptionValue("outputDir");
         verify = cmd.hasOption("verify");
+        resume = cmd.hasOption("resume");
+        if (cmd.hasOption("tika")) {
+            textExtractor = new TikaTextExtractor();
+        }
         if (!verify) {
             if (outputDir == null) {
                 System.out.println("Please provide output directory");
                 return false;
             }
         }
+        try {
+            if (cmd.hasOption("threads")) {
+                threads = Integer.parseInt(cmd.getOptionValue("threads"));
+            }
+            if (cmd.hasOption("perHost")) {
+                perHost = Integer.parseInt(cmd.getOptionValue("perHost"));
+            }
+        } catch (NumberFormatException e) {
+            logger.error("Wrong number of threads");
+            return false;
+        }
+        hostLimiter = new HostLimiter(perHost);
+        if (cmd.hasOption("shard")) {
+            try {
+                shard = CrawlShard.parse(cmd.getOptionValue("shard"));
+            } catch (IllegalArgumentException e) {
+                logger.error("Wrong shard, expected i/N with i from 0 to N-1: {}", e.getMessage());
+                return false;
+            }
+        }
         String sampleStr = cmd.getOptionValue("sample");
         if (sampleStr != null) {
             try {
@@ -82,51 +143,262 @@ public class NYAppealCollect {
         return true;
     }
 
-    private void downloadDocuments() {
-        List<String> urls = new NYAppealUtil().listURLs();
-        Tika tika = new Tika();
-        for (String url : urls) {
-            logger.debug("URL for downloads: {}", url);
-            GetPull pull = new GetPull();
-            pull.setUrl(url);
-            String htmlPage = pull.getResponse();
-            List<String> downloadLinks = new NYAppealUtil().listDownloadLinks(htmlPage);
-            Metadata metadata = new Metadata();
-            for (String downloadLink : downloadLinks) {
-                logger.debug("Download link: {}", downloadLink);
-                ++documentsCollected;
-                if (verify) {
-                    // verify means don't download, just list
-                    continue;
+    private void downloadDocuments() throws InterruptedException, IOException {
+        List<String> urls = new ArrayList<>();
+        for (String url : new NYAppealUtil().listURLs()) {
+            if (shard.takes(url)) {
+                urls.add(url);
+            }
+        }
+        logger.info("Shard {} has {} index pages", shard, urls.size());
+        List<String> pendingLinks = Collections.emptyList();
+        if (!verify) {
+            frontier = new CrawlFrontier(new File(outputDir, FRONTIER), resume);
+            // links listed before the crawl stopped go first, their index pages are listed again only if they changed
+            pendingLinks = frontier.getPending();
+            // the sample may have grown since
+            for (String link : frontier.getSkipped()) {
+                if (CrawlShard.sampled(link, sample)) {
+                    pendingLinks.add(link);
                 }
-                if (Math.random() > sample) {
-                    continue;
+            }
+            if (resume) {
+                logger.info("Resuming with {} documents pending", pendingLinks.size());
+            }
+        }
+        // one client for the whole crawl, with a connection for each request in flight
+        client = PullClient.create(Math.max(threads, 2), Math.max(1, Math.min(threads, perHost)));
+        try {
+            if (threads > 1) {
+                downloadConcurrently(pendingLinks, urls);
+                return;
+            }
+            for (String downloadLink : pendingLinks) {
+                downloadDocument(downloadLink);
+            }
+            for (String url : urls) {
+                for (String downloadLink : listDownloadLinks(url)) {
+                    downloadDocument(downloadLink);
                 }
+            }
+        } finally {
+            client.close();
+            if (frontier != null) {
+                frontier.close();
+            }
+        }
+    }
+
+    /**
+     * Index pages and documents are pulled by separate pools, so that listing goes on while documents download.
+     * An index page waits to queue its links when the document pool is far enough behind.
+     */
+    private void downloadConcurrently(List<String> pendingLinks, List<String> urls) throws InterruptedException {
+        int indexThreads = Math.max(1, threads / 4);
+        int documentThreads = Math.max(1, threads - indexThreads);
+        ExecutorService indexPool = Executors.newFixedThreadPool(indexThreads);
+        final ExecutorService documentPool = Executors.newFixedThreadPool(documentThreads);
+        final Semaphore pending = new Semaphore(documentThreads * PENDING_PER_THREAD);
+        try {
+            for (String downloadLink : pendingLinks) {
+                queueDocument(documentPool, pending, downloadLink);
+            }
+            for (final String url : urls) {
+                indexPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (String downloadLink : listDownloadLinks(url)) {
+                            try {
+                                queueDocument(documentPool, pending, downloadLink);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                        }
+                    }
+                });
+            }
+            // all links are queued once the index pages are done
+            indexPool.shutdown();
+            indexPool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            documentPool.shutdown();
+            documentPool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } finally {
+            indexPool.shutdownNow();
+            documentPool.shutdownNow();
+        }
+    }
+
+    private void queueDocument(ExecutorService documentPool, final Semaphore pending, final String downloadLink)
+            throws InterruptedException {
+        pending.acquire();
+        documentPool.execute(new Runnable() {
+            @Override
+            public void run() {
                 try {
-                    // original html
-                    pull.setUrl(downloadLink);
-                    String courtDoc = pull.getResponse();
-                    String fileName = new File(downloadLink).getName();
-                    Files.write(courtDoc, new File(outputDir + "/html/" + fileName), Charset.defaultCharset());
-                    NYAppealUtil.sleep(delay);
-                    // parsed as text
-                    InputStream stream = new ByteArrayInputStream(courtDoc.getBytes(StandardCharsets.UTF_8));
-                    String htmlText = tika.parseToString(stream, metadata);
-                    // TODO - we are not using metadata as yet, but it may be a good idea
-                    Files.write(htmlText, new File(outputDir + "/txt/" + fileName + ".txt"), Charset.defaultCharset());
-
-                } catch (IOException | TikaException e) {
-                    logger.error("Problem downloading {}", downloadLink);
+                    downloadDocument(downloadLink);
+                } finally {
+                    pending.release();
+                }
+            }
+        });
+    }
+
+    private List<String> listDownloadLinks(String url) {
+        logger.debug("URL for downloads: {}", url);
+        CrawlFrontier.Index known = frontier != null ? frontier.getIndex(url) : null;
+        GetPull pull = newPull(url);
+        if (known != null) {
+            // most index pages of past years never change
+            if (!NONE.equals(known.etag)) {
+                pull.addHeader("If-None-Match", known.etag);
+            }
+            if (!NONE.equals(known.lastModified)) {
+                pull.addHeader("If-Modified-Since", known.lastModified);
+            }
+        }
+        if (!acquire(url)) {
+            return new ArrayList<>();
+        }
+        String htmlPage;
+        try {
+            htmlPage = pull.getResponse();
+            NYAppealUtil.sleep(delay);
+        } finally {
+            hostLimiter.release(url);
+        }
+        String hash = MD5Hash.digest(htmlPage).toString();
+        if (known != null && (pull.getStatusCode() == HttpStatus.SC_NOT_MODIFIED || known.hash.equals(hash))) {
+            logger.debug("Index page unchanged: {}", url);
+            indexPagesUnchanged.incrementAndGet();
+            return new ArrayList<>();
+        }
+        List<String> downloadLinks = new NYAppealUtil().listDownloadLinks(htmlPage);
+        // an empty page may be a failed pull, it is listed again on resume
+        if (frontier != null && pull.getStatusCode() == HttpStatus.SC_OK && !downloadLinks.isEmpty()) {
+            try {
+                frontier.expanded(url, new CrawlFrontier.Index(valueOf(pull.getResponseHeader("ETag")),
+                        valueOf(pull.getResponseHeader("Last-Modified")), hash), downloadLinks);
+            } catch (IOException e) {
+                logger.error("Could not record the links of {}", url);
+            }
+        }
+        return downloadLinks;
+    }
+
+    /**
+     * The original html goes to disk as the text extractor reads it, so a document is never held in memory whole.
+     */
+    private void downloadDocument(String downloadLink) {
+        logger.debug("Download link: {}", downloadLink);
+        documentsCollected.incrementAndGet();
+        if (verify) {
+            // verify means don't download, just list
+            return;
+        }
+        String fileName = new File(downloadLink).getName();
+        File htmlFile = new File(outputDir + "/html/" + fileName);
+        if (isDone(downloadLink, htmlFile)) {
+            return;
+        }
+        if (!CrawlShard.sampled(downloadLink, sample)) {
+            record(downloadLink, CrawlFrontier.SKIPPED, 0, NONE);
+            return;
+        }
+        if (!acquire(downloadLink)) {
+            return;
+        }
+        File textFile = new File(outputDir + "/txt/" + fileName + ".txt");
+        MessageDigest digest = MD5Hash.getDigester();
+        CountingInputStream counted = null;
+        GetPull pull = newPull(downloadLink);
+        try (InputStream body = pull.getResponseStream()) {
+            if (pull.getStatusCode() == HttpStatus.SC_OK) {
+                try (OutputStream html = new BufferedOutputStream(new FileOutputStream(htmlFile));
+                     Writer text = new BufferedWriter(new OutputStreamWriter(
+                             new FileOutputStream(textFile), Charset.defaultCharset()))) {
+                    counted = new CountingInputStream(new DigestInputStream(body, digest));
+                    InputStream tee = new TeeInputStream(counted, html);
+                    textExtractor.extract(tee, text);
+                    // the rest of the html, if the parser stopped early
+                    IOUtils.copy(tee, new NullOutputStream());
                 }
+            } else {
+                logger.error("Status {} downloading {}", pull.getStatusCode(), downloadLink);
             }
             NYAppealUtil.sleep(delay);
+        } catch (IOException e) {
+            logger.error("Problem downloading {}", downloadLink);
+            counted = null;
+        } finally {
+            hostLimiter.release(downloadLink);
+        }
+        if (counted != null) {
+            record(downloadLink, CrawlFrontier.OK, counted.getByteCount(), new MD5Hash(digest.digest()).toString());
+        } else {
+            // an error page or a partial download is not kept, the document is pulled again on resume
+            FileUtils.deleteQuietly(htmlFile);
+            FileUtils.deleteQuietly(textFile);
+            record(downloadLink, CrawlFrontier.ERROR, 0, NONE);
         }
     }
 
+    private static String valueOf(String header) {
+        return header == null || header.isEmpty() ? NONE : header;
+    }
+
+    /**
+     * @return true if an earlier run downloaded the document, or left it out of a sample that still leaves it out
+     */
+    private boolean isDone(String downloadLink, File htmlFile) {
+        if (frontier == null) {
+            return false;
+        }
+        CrawlFrontier.Document doc = frontier.get(downloadLink);
+        return doc != null && (CrawlFrontier.SKIPPED.equals(doc.status) && !CrawlShard.sampled(downloadLink, sample)
+                || CrawlFrontier.OK.equals(doc.status) && htmlFile.exists());
+    }
+
+    private void record(String downloadLink, String status, long size, String hash) {
+        if (frontier == null) {
+            return;
+        }
+        try {
+            frontier.fetched(downloadLink, status, size, hash);
+        } catch (IOException e) {
+            logger.error("Could not record the download of {}", downloadLink);
+        }
+    }
+
+    /**
+     * Wait for a slot within the limit of requests to the host of the url. The caller releases it, after pausing
+     * before the next request on the same slot.
+     *
+     * @return false if interrupted while waiting
+     */
+    private boolean acquire(String url) {
+        try {
+            hostLimiter.acquire(url);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private GetPull newPull(String url) {
+        GetPull pull = new GetPull();
+        pull.setClient(client);
+        pull.setUrl(url);
+        return pull;
+    }
+
     private void prepareOutput() throws IOException {
         if (outputDir != null) {
             new File(outputDir).mkdirs();
-            FileUtils.cleanDirectory(new File(outputDir));
+            if (!resume) {
+                FileUtils.cleanDirectory(new File(outputDir));
+            }
             new File(outputDir + "/html").mkdirs();
             new File(outputDir + "/txt").mkdirs();
 
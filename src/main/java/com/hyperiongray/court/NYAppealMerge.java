@@ -0,0 +1,147 @@
+package com.hyperiongray.court;
+
+import org.apache.commons.cli.*;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Combines the output directories of NYAppealCollect crawls, such as the shards of one crawl run on several machines,
+ * into one corpus that NYAppealParse reads. The html and txt files are copied and the frontier logs appended, so the
+ * combined directory can also be brought up to date with NYAppealCollect --resume.
+ * <p/>
+ * The output directory may already hold a corpus, which the inputs are added to. A file that is there already is
+ * left alone, and counted as a conflict if the input has a different one of the same name.
+ */
+public class NYAppealMerge {
+    private static final Logger logger = LoggerFactory.getLogger(NYAppealMerge.class);
+    private static final String[] SUBDIRS = {"html", "txt"};
+    private static Options options;
+
+    private String[] inputDirs;
+    private String outputDir;
+    private int filesCopied;
+    private int duplicates;
+    private int conflicts;
+
+    public static void main(String[] args) {
+        formOptions();
+        if (args.length == 0) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("NYAppealMerge - combines the outputs of NYAppealCollect crawls", options);
+            return;
+        }
+        NYAppealMerge instance = new NYAppealMerge();
+        try {
+            if (!instance.parseParameters(args)) {
+                return;
+            }
+            instance.merge();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        System.out.println("Files copied: " + instance.filesCopied);
+        System.out.println("Duplicates: " + instance.duplicates);
+        System.out.println("Conflicts: " + instance.conflicts);
+    }
+
+    private static void formOptions() {
+        options = new Options();
+        options.addOption("i", "inputDirs", true, "Output directories of the crawls, comma separated");
+        options.addOption("o", "outputDir", true, "Output directory");
+    }
+
+    private boolean parseParameters(String[] args) throws ParseException {
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmd = parser.parse(options, args);
+        outputDir = cmd.getOptionValue("outputDir");
+        if (outputDir == null || !cmd.hasOption("inputDirs")) {
+            System.out.println("Please provide input and output directories");
+            return false;
+        }
+        inputDirs = cmd.getOptionValue("inputDirs").split(",");
+        return true;
+    }
+
+    NYAppealMerge() {
+    }
+
+    NYAppealMerge(String[] inputDirs, String outputDir) {
+        this.inputDirs = inputDirs;
+        this.outputDir = outputDir;
+    }
+
+    void merge() throws IOException {
+        File output = new File(outputDir);
+        for (String subdir : SUBDIRS) {
+            new File(output, subdir).mkdirs();
+        }
+        for (String inputDir : inputDirs) {
+            File input = new File(inputDir.trim());
+            if (input.getCanonicalFile().equals(output.getCanonicalFile())) {
+                continue;
+            }
+            logger.info("Merging {}", input);
+            for (String subdir : SUBDIRS) {
+                mergeFiles(new File(input, subdir), new File(output, subdir));
+            }
+            File frontier = new File(input, NYAppealCollect.FRONTIER);
+            if (frontier.exists()) {
+                // the frontier is read line by line, later lines adding to the earlier ones
+                append(frontier, new File(output, NYAppealCollect.FRONTIER));
+            }
+        }
+    }
+
+    int getFilesCopied() {
+        return filesCopied;
+    }
+
+    int getDuplicates() {
+        return duplicates;
+    }
+
+    int getConflicts() {
+        return conflicts;
+    }
+
+    private void mergeFiles(File from, File to) throws IOException {
+        File[] files = from.listFiles();
+        if (files == null) {
+            logger.warn("Nothing in {}", from);
+            return;
+        }
+        for (File file : files) {
+            File target = new File(to, file.getName());
+            if (!target.exists()) {
+                FileUtils.copyFile(file, target);
+                ++filesCopied;
+            } else if (FileUtils.contentEquals(file, target)) {
+                ++duplicates;
+            } else {
+                logger.warn("Keeping {}, it differs from {}", target, file);
+                ++conflicts;
+            }
+        }
+    }
+
+    private static void append(File from, File to) throws IOException {
+        // a crawl that stopped may have left the last line unfinished
+        boolean lineBreak = to.exists() && !CrawlFrontier.endsWithLineBreak(to);
+        try (InputStream in = new FileInputStream(from);
+             OutputStream out = new FileOutputStream(to, true)) {
+            if (lineBreak) {
+                out.write('\n');
+            }
+            IOUtils.copy(in, out);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.hyperiongray.court;
+
+import org.apache.commons.cli.*;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Packs the documents of a directory or archive into a SequenceFile of (file name, content), the input of
+ * NYAppealParseJob. A cluster splits a few large files among its mappers, where it would spend more time opening
+ * a hundred thousand small ones than parsing them.
+ */
+public class NYAppealPack {
+    private static final Logger logger = LoggerFactory.getLogger(NYAppealPack.class);
+    private static Options options;
+
+    public static void main(String[] args) {
+        formOptions();
+        if (args.length == 0) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("NYAppealPack - packs court cases into a SequenceFile for NYAppealParseJob", options);
+            return;
+        }
+        try {
+            CommandLine cmd = new GnuParser().parse(options, args);
+            String inputDir = cmd.getOptionValue("inputDir");
+            String outputFile = cmd.getOptionValue("outputFile");
+            if (inputDir == null || outputFile == null) {
+                System.out.println("Please provide input and output");
+                return;
+            }
+            try (DocumentSource source = DocumentSource.open(inputDir)) {
+                int packed = pack(source, new Path(outputFile), new Configuration());
+                System.out.println("Documents packed: " + packed);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void formOptions() {
+        options = new Options();
+        options.addOption("i", "inputDir", true, "Input directory, or .tar, .tar.gz or .zip archive");
+        options.addOption("o", "outputFile", true, "Output SequenceFile, local or on the cluster file system");
+    }
+
+    /**
+     * All the documents go in, NYAppealParseJob skips those that are not text, as NYAppealParse does.
+     *
+     * @return documents packed
+     */
+    public static int pack(DocumentSource source, Path output, Configuration conf) throws IOException {
+        FileSystem fs = output.getFileSystem(conf);
+        int packed = 0;
+        SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, output, Text.class, BytesWritable.class,
+                SequenceFile.CompressionType.BLOCK, new DefaultCodec());
+        try {
+            DocumentSource.Entry doc;
+            while ((doc = source.next()) != null) {
+                writer.append(new Text(doc.getName()), new BytesWritable(doc.getContent()));
+                ++packed;
+                if (packed % 10000 == 0) {
+                    logger.info("Packed {}", packed);
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        return packed;
+    }
+}
@@ -1,17 +1,36 @@
 package com.hyperiongray.court;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.hyperiongray.court.DocumentContext.Zone;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
@@ -34,14 +53,45 @@ public class NYAppealParse {
     }
 
     private final static int MAX_FIELD_LENGTH = 100; // more than that is probably a bug, so don't make it a parameter
+    private final static int OUTPUT_QUEUE_SIZE = 1000;
+    // documents in memory per parallel window, archive entries are read as they are reached
+    private final static int PARSE_WINDOW = 1000;
+    // reported in place of a pattern for the fields left out when a document is over its time budget
+    private final static String DOCUMENT_BUDGET_USED = "(document time budget used up)";
+    // kept in the manifest of incremental runs, bump it when the extraction changes, to re-parse everything
+    private final static String PARSER_VERSION = "2";
     private Stats stats = new Stats();
+    private final Map<KEYS, FieldExtractor> extractors = new EnumMap<>(KEYS.class);
+    // columns of the output, all of them unless only some are asked for
+    private Set<KEYS> outputFields = EnumSet.allOf(KEYS.class);
 
     private String inputDir;
     private String outputFile;
     private int breakSize = 10000;
+    private long breakBytes = 0; // no limit
+    private RollingCsvWriter output;
+    private int threads = 1;
+    // time budgets in milliseconds, 0 for no limit
+    private long documentBudget = 0;
+    private long fieldBudget = 0;
+    // incremental runs only extract files that are new or changed since the manifest was written
+    private boolean incremental = false;
+    private ParseManifest previousManifest;
+    private Map<String, String> previousRows;
+    private ParseManifest manifest;
+    private String version;
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+    // the counters each document added to, kept in the manifest for when the document is not parsed again
+    private final Map<String, List<String>> hits = new ConcurrentHashMap<>();
     private char separator = '|';
     private String months = "(January|February|March|April|May|June|July|August|September|October|November|December)";
-    private static SimpleDateFormat dateFormat = new SimpleDateFormat("MMMMMdd,yyyy");
+    // SimpleDateFormat is not thread safe, so every parse worker gets its own
+    private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("MMMMMdd,yyyy");
+        }
+    };
 
     Pattern[] keywords = {Pattern.compile("affirmed"),
             Pattern.compile("modified"),
@@ -67,8 +117,11 @@ public class NYAppealParse {
     Pattern[] unanimous = {
     		 Pattern.compile("unanimous"), Pattern.compile("unanimously")
     };
+
+    // all the phrase sets above are searched for in one pass, these are their positions in the automaton
+    private static final int KEYWORDS_SET = 0, GROUNDS_SET = 1, DEFENSE_SET = 2, UNANIMOUS_SET = 3;
+    private final PhraseAutomaton phraseAutomaton = new PhraseAutomaton(keywords, grounds, defense, unanimous);
     
-    boolean sexOffender = false;
     String sexOffenderKeywords = "sex\\s*offender\\s*registration\\s*act";
 
 
@@ -111,475 +164,547 @@ public class NYAppealParse {
 
     private Pattern DA_1_PATTERN = Pattern.compile("(.*)\\sDistrict Attorney", Pattern.CASE_INSENSITIVE);
     private Pattern DA_2_PATTERN = Pattern.compile("\\([a-zA-Z,\\.\\s]+of\\s+counsel[\\);]", Pattern.CASE_INSENSITIVE);
+    private Pattern DISTRICT_ATTORNEY_PATTERN = Pattern.compile("district attorney", Pattern.CASE_INSENSITIVE);
 
     private Pattern HARMLESS_ERROR_PATTERN = Pattern.compile("([^.]*?harmless[^.]*\\.)", Pattern.CASE_INSENSITIVE);
 
     private Pattern PROSECUTOR_MISCONDUCT_PATTERN = Pattern.compile("prosecut[a-zA-Z\\s]*misconduct", Pattern.CASE_INSENSITIVE);
     // END OF compiled PATTERNs
 
+    public NYAppealParse() {
+        registerExtractors();
+    }
+
     public Map<String, String> extractInfo(File file) throws IOException {
-        String text = FileUtils.readFileToString(file);
+        return extractInfo(toDocument(file.getName(), FileUtils.readFileToString(file)));
+    }
+
+    private DocumentContext toDocument(String name, String text) {
         text = text.replaceAll("" + separator, "");
-        String textFlow = text.replaceAll("\\r\\n|\\r|\\n", " ");
+        TimeBudget budget = documentBudget > 0 || fieldBudget > 0 ? new TimeBudget(documentBudget, fieldBudget) : null;
+        return new DocumentContext(name, text, budget);
+    }
 
-        //System.out.println("Text flow: " + textFlow);
-        Map<String, String> info = new HashMap<>();
-        // there are so many exceptions that 'case' is preferable to a generic loops with exceptions
-        Matcher m;
-        String value = "";
-        // civil vs criminal
-        boolean criminal;
+    public Map<String, String> extractInfo(DocumentContext doc) {
+        return extractInfo(doc, outputFields);
+    }
 
-        m = CRIMINAL_PATTERN.matcher(text);
-        criminal = m.find();
-        if (criminal) {
-            // this should occur almost in the beginning of the file
-            if (text.indexOf("People v ") > 100) {
-                criminal = false;
+    /**
+     * Run the extractors of the fields, and of the fields they depend on, in the order of KEYS.
+     * The time of each extractor goes into the stats; what the document computes lazily, such as the sentences,
+     * is counted for the first field that needs it.
+     *
+     * @return field name to value, for the fields and their dependencies
+     */
+    public Map<String, String> extractInfo(DocumentContext doc, Set<KEYS> fields) {
+        Map<String, String> info = new HashMap<>();
+        long docStart = System.nanoTime();
+        KEYS slowestField = null;
+        long slowestTime = -1;
+        TimeBudget budget = doc.getTimeBudget();
+        if (budget != null) {
+            budget.startDocument();
+        }
+        boolean timedOut = false;
+        for (KEYS key : withDependencies(fields)) {
+            // put in a placeholder value - unless something was already parsed together with a different key, out of order
+            if (!info.containsKey(key.toString())) {
+                info.put(key.toString(), "");
+            }
+            FieldExtractor extractor = extractors.get(key);
+            if (extractor == null) {
+                logger.error("Aren't you forgetting something, Mr.? How about {} field?", key.toString());
+                continue;
+            }
+            if (budget != null) {
+                if (budget.isDocumentOver()) {
+                    stats.recordTimeout(key, DOCUMENT_BUDGET_USED);
+                    timedOut = true;
+                    continue;
+                }
+                budget.startField();
+            }
+            long start = System.nanoTime();
+            try {
+                extractor.extract(doc, info);
+            } catch (TimeBudgetExceededException e) {
+                // whatever the extractor got to is not to be trusted
+                info.put(key.toString(), "");
+                stats.recordTimeout(key, e.getPattern().pattern());
+                timedOut = true;
+                logger.warn("{} of {} is over the time budget, matching {}", key, doc.getName(), e.getPattern().pattern());
+            }
+            long time = System.nanoTime() - start;
+            stats.fieldTimes.get(key).record(time);
+            if (time > slowestTime) {
+                slowestField = key;
+                slowestTime = time;
             }
         }
-        // sex offender
-        m = SEX_OFFENDER_PATTERN.matcher(text);
-        sexOffender = m.find();
-        if (sexOffender) criminal = true;
+        stats.slowDocuments.record(doc.getName(), System.nanoTime() - docStart, String.valueOf(slowestField), slowestTime);
+        if (timedOut) stats.timedOutDocs.incrementAndGet();
+        return info;
+    }
 
-        for (int e = 0; e < KEYS.values().length; ++e) {
-            KEYS key = KEYS.values()[e];
-            value = "";
+    /**
+     * Register the extractor for a field, replacing the current one. Fields are extracted in the order of KEYS,
+     * so an extractor can only depend on fields that come before its own.
+     */
+    public void register(KEYS key, FieldExtractor extractor) {
+        for (KEYS dependency : extractor.getDependencies()) {
+            if (dependency.compareTo(key) >= 0) {
+                throw new IllegalArgumentException(key + " can't depend on " + dependency + ", which is extracted after it");
+            }
+        }
+        extractors.put(key, extractor);
+    }
 
-            // put in a placeholder value - unless something was already parsed together with a different key, out of order
-            if (!info.containsKey(key.toString())) {
-                info.put(key.toString(), value);
+    private Set<KEYS> withDependencies(Set<KEYS> fields) {
+        Set<KEYS> needed = EnumSet.noneOf(KEYS.class);
+        Deque<KEYS> toAdd = new ArrayDeque<>(fields);
+        while (!toAdd.isEmpty()) {
+            KEYS key = toAdd.pop();
+            if (needed.add(key) && extractors.containsKey(key)) {
+                toAdd.addAll(Arrays.asList(extractors.get(key).getDependencies()));
             }
+        }
+        return needed;
+    }
 
-            switch (key) {
-                case File:
-                    info.put(KEYS.File.toString(), file.getName());
-                    continue;
-                case Casenumber:
-                    value = "";
-                    m = CASE_NUMBER_1_PATTERN.matcher(text);
+    /**
+     * Find in the text from the start of the zone on first, and only then in the whole text.
+     */
+    private boolean findZoneFirst(DocumentContext doc, Matcher m, Zone zone) {
+        int start = doc.getZoneStart(zone);
+        return m.region(start, m.regionEnd()).find() || (start > 0 && m.reset().find());
+    }
+
+    /**
+     * @return numbers of the sentences, those in the zones from first to last coming first, then the rest in order
+     */
+    private int[] sentencesZoneFirst(DocumentContext doc, SentenceSpans sentences, Zone first, Zone last) {
+        int from = sentences.sentenceAt(doc.getZoneStart(first));
+        int end = doc.getZoneEnd(last);
+        int to = end > 0 ? Math.min(sentences.size(), sentences.sentenceAt(end - 1) + 1) : 0;
+        if (to < from) to = from;
+        int[] order = new int[sentences.size()];
+        int n = 0;
+        for (int i = from; i < to; ++i) order[n++] = i;
+        for (int i = 0; i < from; ++i) order[n++] = i;
+        for (int i = to; i < order.length; ++i) order[n++] = i;
+        return order;
+    }
+
+    private void hit(DocumentContext doc, AtomicInteger counter) {
+        counter.incrementAndGet();
+        doc.addHit(stats.nameOf(counter));
+    }
+
+    private boolean isCriminal(Map<String, String> info) {
+        return "K".equals(info.get(KEYS.CivilKriminal.toString()));
+    }
+
+    // CivilKriminal and Crimes both ask, the document is searched once
+    private boolean isSexOffender(DocumentContext doc) {
+        return doc.find(SEX_OFFENDER_PATTERN);
+    }
+
+    // there are so many exceptions that a class per field is preferable to a generic loop with exceptions
+    private void registerExtractors() {
+        register(KEYS.File, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                info.put(KEYS.File.toString(), doc.getName());
+            }
+        });
+        register(KEYS.Casenumber, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                String value = "";
+                Matcher m = doc.matcher(CASE_NUMBER_1_PATTERN, doc.getText());
+                if (m.find()) {
+                    value = sanitize(m.group());
+                    if (value.length() >= 3 && value.length() <= 15 && value.contains("AD")) {
+                        info.put(KEYS.Casenumber.toString(), value);
+                    }
+                }
+                if (value.isEmpty()) {
+                    m = doc.matcher(CASE_NUMBER_2_PATTERN, doc.getText());
                     if (m.find()) {
                         value = sanitize(m.group());
-                        if (value.length() >= 3 && value.length() <= 15 && value.contains("AD")) {
-                            info.put(key.toString(), value);
-                        }
+                        info.put(KEYS.Casenumber.toString(), value);
                     }
-                    if (value.isEmpty()) {
-                        m = CASE_NUMBER_2_PATTERN.matcher(text);
-                        if (m.find()) {
-                            value = sanitize(m.group());
-                            info.put(key.toString(), value);
-                        }
-                    }
-                    if (!value.isEmpty()) ++stats.caseNumber;
-                    continue;
-
-                case CivilKriminal:
-                    info.put(KEYS.CivilKriminal.toString(), criminal ? "K" : "C");
-                    if (criminal) {
-                        ++stats.criminal;
-                    } else {
-                        ++stats.civil;
+                }
+                if (!value.isEmpty()) hit(doc, stats.caseNumber);
+            }
+        });
+        register(KEYS.CivilKriminal, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                String text = doc.getText();
+                boolean criminal = doc.matcher(CRIMINAL_PATTERN, text).find();
+                if (criminal) {
+                    // this should occur almost in the beginning of the file
+                    if (text.indexOf("People v ") > 100) {
+                        criminal = false;
                     }
-                    continue;
-
-//                case SexOffender:
-//                    info.put(KEYS.SexOffender.toString(), sexOffender? "Y" : "");
-//                    if (sexOffender) {
-//                        ++stats.sexOffence;
-//                    }
-//                    continue;
-
-                case DocumentLength:
-                    info.put(KEYS.DocumentLength.toString(), Integer.toString(text.length()));
-                    continue;
-                case Court:
-                    value = "";
-                    //  regex = "(Supreme Court)|(County Court)|(Court of Claims)|(Family Court)|" +
-                    //          "(Workers' Compensation Board)|(Division of Human Rights)|" +
-                    //          "(Unemployment Insurance Appeal Board)|(Department of Motor Vehicles)";
-                    m = COURT_1_PATTERN.matcher(text);
+                }
+                // sex offender
+                if (isSexOffender(doc)) criminal = true;
+                info.put(KEYS.CivilKriminal.toString(), criminal ? "K" : "C");
+                if (criminal) {
+                    hit(doc, stats.criminal);
+                } else {
+                    hit(doc, stats.civil);
+                }
+            }
+        });
+        register(KEYS.Court, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                String value = "";
+                //  regex = "(Supreme Court)|(County Court)|(Court of Claims)|(Family Court)|" +
+                //          "(Workers' Compensation Board)|(Division of Human Rights)|" +
+                //          "(Unemployment Insurance Appeal Board)|(Department of Motor Vehicles)";
+                Matcher m = doc.matcher(COURT_1_PATTERN, doc.getText());
+                if (m.find()) {
+                    value = m.group();
+                    info.put(KEYS.Court.toString(), sanitize(value));
+                }
+                if (value.isEmpty()) {
+                    //regex = "\\s+[a-zA-Z]+\\s+Committee\\s+[a-zA-Z\\s]+";
+                    m = doc.matcher(COURT_COMMITTEE_PATTERN, doc.getTextFlow());
                     if (m.find()) {
                         value = m.group();
-                        info.put(key.toString(), sanitize(value));
+                        value = value.substring(1);
+                        info.put(KEYS.Court.toString(), sanitize(value));
                     }
-                    if (value.isEmpty()) {
-                        //regex = "\\s+[a-zA-Z]+\\s+Committee\\s+[a-zA-Z\\s]+";
-                        m = COURT_COMMITTEE_PATTERN.matcher(textFlow);
+                    info.put(KEYS.Court.toString(), value);
+                }
+                if (!value.isEmpty()) hit(doc, stats.court);
+                if (value.isEmpty()) logger.debug("Court problem in file {} ", doc.getName());
+            }
+        });
+        register(KEYS.County, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                String value;
+                //regex = "[a-zA-Z]+\\sCounty";
+                Matcher m = doc.matcher(COUNTRY_PATTERN, doc.getText());
+                if (m.find()) {
+                    value = sanitize(m.group());
+                    // county is found further down, but clos nearby
+                    if (value.toLowerCase().equals("the county")) {
                         if (m.find()) {
-                            value = m.group();
-                            value = value.substring(1);
-                            info.put(key.toString(), sanitize(value));
+                            value = sanitize((m.group()));
                         }
-                        info.put(key.toString(), value);
                     }
-                    if (!value.isEmpty()) ++stats.court;
-                    if (value.isEmpty()) logger.debug("Court problem in file {} ", file.getName());
-                    continue;
-                case County:
-                    value = "";
-                    //regex = "[a-zA-Z]+\\sCounty";
-                    m = COUNTRY_PATTERN.matcher(text);
-                    if (m.find()) {
-                        value = sanitize(m.group());
-                        // county is found further down, but clos nearby
-                        if (value.toLowerCase().equals("the county")) {
-                            if (m.find()) {
-                                value = sanitize((m.group()));
-                            }
-                        }
-                        // this is a quotation, and county should have been found earlier or not at all
-                        if (value.toLowerCase().equals("v county")) {
-                            value = "";
-                        }
-
-                        if (NYAppealUtil.isCounty(value)) {
-	                        info.put(key.toString(), value);
-	                        ++stats.county;
-                        }
+                    // this is a quotation, and county should have been found earlier or not at all
+                    if (value.toLowerCase().equals("v county")) {
+                        value = "";
                     }
-                    continue;
 
-                case Judge:
-                    m = JUDGE_PATTERN.matcher(textFlow);
+                    String county = NYAppealUtil.findCounty(value);
+                    if (county != null) {
+                        info.put(KEYS.County.toString(), county);
+                        hit(doc, stats.county);
+                    }
+                }
+            }
+        });
+        register(KEYS.Judge, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                // the judge of the lower court is named where the body says what is appealed from
+                Matcher m = doc.matcher(JUDGE_PATTERN, doc.getTextFlow());
+                if (findZoneFirst(doc, m, Zone.BODY)) {
+                    String value = m.group();
+                    value = inParentheses(value);
+                    info.put(KEYS.Judge.toString(), sanitize(value));
+                    hit(doc, stats.judge);
+                }
+            }
+        });
+        register(KEYS.DistrictAttorney, new FieldExtractor(KEYS.CivilKriminal) {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                if (!isCriminal(info)) return;
+                SentenceSpans sentences = doc.getSentences();
+                String value = "";
+                for (int i : sentencesZoneFirst(doc, sentences, Zone.COUNSEL, Zone.COUNSEL)) {
+                    String sentence = sanitize(sentences.getSentence(i));
+                    Matcher m = doc.matcher(DA_1_PATTERN, sentence);
                     if (m.find()) {
                         value = m.group();
-                        value = inParentheses(value);
-                        info.put(key.toString(), sanitize(value));
-                        ++stats.judge;
-                    } else {
-                        value = "";
+                        int end = value.length() - "District Attorney".length();
+                        // TODO fix this hack
+                        if (end < 0) end = 0;
+                        value = value.substring(0, end);
+                        value = value.replaceAll("Acting", "");
+                        value = sanitize(value);
+                        if (NYAppealUtil.isProbablyName(value)) {
+                            info.put(KEYS.DistrictAttorney.toString(), value);
+                            break;
+                        }
                     }
-                    continue;
-
-                case Keywords:
-                    value = findAll(text, keywords);
-                    info.put(key.toString(), value);
-                    if (!value.isEmpty()) ++stats.keywords;
-                    continue;
-
-                case GroundsForAppeal:
-                    value = findAll(text, grounds);
-                    info.put(key.toString(), value);
-                    continue;
+                }
 
-                case FirstDate:
-                    value = "";
-                    List<String> sentences = NYAppealUtil.splitToSentences(textFlow);
-                    for (String sentence : sentences) {
-	                    //regex = "(rendered|entered|dated|filed) " + months + " [0-9]+?, 2[0-1][0-9][0-9]";
-                    	//Judgment, Supreme Court, Bronx County (William Mogulescu, J.), rendered on or about October 26, 2007, unanimously affirmed.
-	                    m = FIRST_DATE_PATTERN.matcher(sentence);
-	                    if (m.find()) {
-	                        value = m.group(3) + " " + m.group(4);
-	                        value = sanitize(value);
-	                        info.put(key.toString(), value);
-	                        break;
-	                    }
-                    }
-                    if (!value.isEmpty()) ++stats.firstDate;
-                    if (value.isEmpty()) {
-                        logger.warn("First date parsing error in {}", file.getName());
+                if (!value.isEmpty()) {
+                    // also find ADA, which is next to DA, in parenthesis
+                    Matcher da = doc.matcher(DISTRICT_ATTORNEY_PATTERN, doc.getTextFlow());
+                    // found in the flowed text itself, whose offsets are not those of the lower case text
+                    int index = da.find() ? da.start() : -1;
+                    if (index > 0) {
+                        Matcher m = doc.matcher(DA_2_PATTERN, doc.getTextFlow().substring(index));
+                        if (m.find()) {
+                            value = m.group();
+                            value = inParentheses(value);
+                            value = value.substring(0, value.length() - "of counsel".length());
+                            value = sanitize(value);
+                            info.put(KEYS.ADA.toString(), value);
+                        }
                     }
-                    continue;
-
-                case AppealDate:
-                    value = "";
-                    //regex = months + "\\s[0-9]+,\\s[0-9]+";
-                    m = APPEAL_DATE_PATTERN.matcher(text);
+                } else {
+                    hit(doc, stats.districtAttorneyProblem);
+                }
+            }
+        });
+        register(KEYS.ADA, new FieldExtractor(KEYS.DistrictAttorney) {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                // just done together with District Attorney
+            }
+        });
+        register(KEYS.Keywords, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                String value = findAll(doc.getPhraseMatches(phraseAutomaton)[KEYWORDS_SET]);
+                info.put(KEYS.Keywords.toString(), value);
+                if (!value.isEmpty()) hit(doc, stats.keywords);
+            }
+        });
+        register(KEYS.GroundsForAppeal, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                info.put(KEYS.GroundsForAppeal.toString(), findAll(doc.getPhraseMatches(phraseAutomaton)[GROUNDS_SET]));
+            }
+        });
+        register(KEYS.Unanimous, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                String results = findAll(doc.getPhraseMatches(phraseAutomaton)[UNANIMOUS_SET]);
+                if (!results.isEmpty()) {
+                    info.put(KEYS.Unanimous.toString(), "1");
+                } else {
+                    info.put(KEYS.Unanimous.toString(), "0");
+                }
+            }
+        });
+        register(KEYS.FirstDate, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                String value = "";
+                SentenceSpans sentences = doc.getSentences();
+                Matcher m = doc.matcher(FIRST_DATE_PATTERN, sentences.getText());
+                for (int i : sentencesZoneFirst(doc, sentences, Zone.BODY, Zone.PANEL)) {
+                    //regex = "(rendered|entered|dated|filed) " + months + " [0-9]+?, 2[0-1][0-9][0-9]";
+                    //Judgment, Supreme Court, Bronx County (William Mogulescu, J.), rendered on or about October 26, 2007, unanimously affirmed.
+                    m.region(sentences.getStart(i), sentences.getEnd(i));
                     if (m.find()) {
-                        value = sanitize(m.group());
-                        info.put(key.toString(), value);
+                        value = m.group(3) + " " + m.group(4);
+                        value = sanitize(value);
+                        info.put(KEYS.FirstDate.toString(), value);
+                        break;
                     }
-                    if (!value.isEmpty()) ++stats.appealDate;
-                    continue;
-
-                case Unanimous:
-                	String results = findAll(text, unanimous);
-                	if (!results.isEmpty()) {
-                		info.put(key.toString(), "1");
-                	} else {
-                		info.put(key.toString(), "0");
-                	}
-                	continue;
-                	
-                case Gap_days:
-                    // done later
-                    continue;
-
-                case ModeOfConviction:
-                    if (!criminal) continue;
-                    value = "";
-                    //regex = "plea\\s*of\\s*guilty|jury\\s*verdict|nonjury\\s*trial";
-                    m = CONVICTION_PATTERN.matcher(text);
-                    if (m.find()) {
-                        value = sanitize(m.group());
-                        info.put(key.toString(), value);
+                }
+                if (!value.isEmpty()) hit(doc, stats.firstDate);
+                if (value.isEmpty()) {
+                    logger.warn("First date parsing error in {}", doc.getName());
+                }
+            }
+        });
+        register(KEYS.AppealDate, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                //regex = months + "\\s[0-9]+,\\s[0-9]+";
+                Matcher m = doc.matcher(APPEAL_DATE_PATTERN, doc.getText());
+                if (m.find()) {
+                    info.put(KEYS.AppealDate.toString(), sanitize(m.group()));
+                    hit(doc, stats.appealDate);
+                }
+            }
+        });
+        register(KEYS.Gap_days, new FieldExtractor(KEYS.FirstDate, KEYS.AppealDate) {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                String firstDateStr = info.get(KEYS.FirstDate.toString());
+                String appealDateStr = info.get(KEYS.AppealDate.toString());
+                Date firstDate = null;
+                Date appealDate = null;
+                if (!firstDateStr.isEmpty()) {
+                    try {
+                        firstDate = dateFormat.get().parse(firstDateStr);
+                    } catch (NumberFormatException | ParseException e) {
+                        logger.error("Date parsing error for {} in {}", firstDateStr, doc.getName());
                     }
-                    if (!value.isEmpty()) ++stats.modeOfConviction;
-                    if (value.isEmpty()) {
-                        logger.warn("Problem with mode of conviction in {}", file.getName());
+                }
+                if (!appealDateStr.isEmpty()) {
+                    try {
+                        appealDate = dateFormat.get().parse(appealDateStr);
+                    } catch (NumberFormatException | ParseException e) {
+                        logger.error("Date parsing error for {} in {}", appealDateStr, doc.getName());
                     }
-                    continue;
-
-                case Crimes:
-//                	 if (criminal && info.containsKey(KEYS.ModeOfConviction.toString())) {
-//                         String mode = info.get(KEYS.ModeOfConviction.toString());
-//                         // crime is from here till the end of the line
-//                         value = "";
-//                         int crimeStart = text.indexOf(mode);
-//                         if (crimeStart > 0) {
-//                             crimeStart += mode.length();
-//                             int comma = text.indexOf("\n", crimeStart);
-//                             if (comma > 0 && (comma - crimeStart < 5)) crimeStart += (comma - crimeStart + 1);
-//                             int crimeEnd = text.indexOf(".", crimeStart);
-//                             if (crimeEnd > 0) {
-//                                 value = text.substring(crimeStart, crimeEnd);
-//                                 value = sanitize(value);
-//                                 info.put(KEYS.Crimes.toString(), value);
-//                                 ++stats.crimes;
-//                             }
-//                         }
-//                         if (value.isEmpty() && sexOffender) {
-//                         }
-//                     }
-                	if (criminal) {
-                		m = CRIMES_PATTERN_1.matcher(textFlow);
-                		if (m.find()) {
-                			value = m.group(2);
-                		} else {
-                			m = CRIMES_PATTERN_2.matcher(textFlow);
-                			if (m.find()) {
-                				value = m.group(2);
-                			}
-                		}
-                		if (!value.isEmpty() && value.contains(".")) {
-                			value = value.split("\\.")[0];
-                		}
-                		if (value.isEmpty() && sexOffender) {
-                            value = "risk pursuant to Sex Offender Registration Act";
-                		}
-                		if (!value.isEmpty()) {
-                			 info.put(KEYS.Crimes.toString(), value);
-                             ++stats.crimes;
-                		}
-                	}
-                    continue;
-
-                case Judges:
-                	sentences = NYAppealUtil.splitToSentences(textFlow);
-                	for (String sentence : sentences) {
-                		if (sentence.contains("concur except")) { // Filter out 'All concur except .. '
-                        	continue;
-                        }
-                		m = JUDGES_1_PATTERN.matcher(sentence);
-                		if (m.find()) {
-                			 value = sentence.substring(m.group(1).length());
-                			 break;
-                		} else {
-	                        m = JUDGES_2_PATTERN.matcher(sentence);
-	                        if (m.find()) {
-                            	value = sentence.substring(0, sentence.length() - "concur.".length());
-	                            break;
-	                        } else {
-	                        	m = JUDGES_3_PATTERN.matcher(sentence);
-	                        	if (m.find()) {
-	                            	value = m.group(1);
-	                            	if (value.startsWith("-")) {
-	                            		value = value.substring(1);
-	                            	}
-		                            break;
-	                        	}
-	                        }
-                		}
-                	}
-                	if (!value.isEmpty()) {
-                        value = sanitize(value);
-                        // occasionally list of judges ends with (Filed .. )
-                        int idx = value.indexOf("(Filed");
-                        if (idx >= 0) {
-                        	value = value.substring(0, idx);
-                        }
-                        info.put(key.toString(), value);
-                        ++stats.judges;
-                	}
-                    continue;
-
-                case Defense:
-                    value = findAll(text, defense);
-                    info.put(key.toString(), value);
-                    continue;
-
-                case DefendantAppellant:;
-                    m = DEFENDANT_APPELLANT_PATTERN.matcher(text);
-//                    if (m.find()) {
-//                        value = m.group();
-//                        if (value.equals(DEF_APP)) {
-//                            // take the previous line
-//                            int defAppIndex = text.indexOf(DEF_APP);
-//                            printAround(text, defAppIndex);
-//                            if (defAppIndex >= 0) {
-//                                int indexBefore = text.lastIndexOf("\n", defAppIndex);
-//                                printAround(text, indexBefore);
-//                                if (indexBefore > 0) {
-//                                    int indexBeforeBefore = text.lastIndexOf("\n", indexBefore - 1);
-//                                    if (indexBeforeBefore >= 0) {
-//                                        value = text.substring(indexBeforeBefore, indexBefore);
-//                                        printAround(text, indexBeforeBefore);
-//                                    }
-//                                }
-//                            }
-//                         }
-//                        info.put(key.toString(), sanitize(value));
-//                    }
-                    if (m.find()) {
-                        info.put(key.toString(), "1");
-                    } else {
-                        info.put(key.toString(), "0");
+                }
+                if (firstDate != null && appealDate != null) {
+                    long gap = appealDate.getTime() - firstDate.getTime();
+                    int gapDays = (int) (gap / 1000 / 60 / 60 / 24);
+                    if (gapDays > 0) {
+                        info.put(KEYS.Gap_days.toString(), Integer.toString(gapDays));
+                        hit(doc, stats.gapDays);
                     }
-                    continue;
-
-                case DefendantRespondent:
-                    m = DEFENDANT_RESPONDENT_PATTERN.matcher(text);
+                }
+            }
+        });
+        register(KEYS.ModeOfConviction, new FieldExtractor(KEYS.CivilKriminal) {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                if (!isCriminal(info)) return;
+                //regex = "plea\\s*of\\s*guilty|jury\\s*verdict|nonjury\\s*trial";
+                Matcher m = doc.matcher(CONVICTION_PATTERN, doc.getText());
+                if (m.find()) {
+                    info.put(KEYS.ModeOfConviction.toString(), sanitize(m.group()));
+                    hit(doc, stats.modeOfConviction);
+                } else {
+                    logger.warn("Problem with mode of conviction in {}", doc.getName());
+                }
+            }
+        });
+        register(KEYS.Crimes, new FieldExtractor(KEYS.CivilKriminal) {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                if (!isCriminal(info)) return;
+                String value = "";
+                Matcher m = doc.matcher(CRIMES_PATTERN_1, doc.getTextFlow());
+                if (m.find()) {
+                    value = m.group(2);
+                } else {
+                    m = doc.matcher(CRIMES_PATTERN_2, doc.getTextFlow());
                     if (m.find()) {
-                        info.put(key.toString(), "1");
-                    } else {
-                        info.put(key.toString(), "0");
+                        value = m.group(2);
                     }
-                    continue;
-
-                case DistrictAttorney:
-                    if (!criminal) continue;
-                    sentences = NYAppealUtil.splitToSentences(textFlow);
-                    value = "";
-                    for (String sentence : sentences) {
-                    	sentence = sanitize(sentence);
-	                    m = DA_1_PATTERN.matcher(sentence);
-	                    if (m.find()) {
-	                        value = m.group();
-	                        int end = value.length() - "District Attorney".length();
-	                        // TODO fix this hack
-	                        if (end < 0) end = 0;
-	                        value = value.substring(0, end);
-	                        value = value.replaceAll("Acting", "");
-	                        value = sanitize(value);
-	                        if (NYAppealUtil.isProbablyName(value)) {
-		                        info.put(key.toString(), value);
-		                        break;
-	                        }
-	                    }
+                }
+                if (!value.isEmpty() && value.contains(".")) {
+                    value = value.split("\\.")[0];
+                }
+                if (value.isEmpty() && isSexOffender(doc)) {
+                    value = "risk pursuant to Sex Offender Registration Act";
+                }
+                if (!value.isEmpty()) {
+                    info.put(KEYS.Crimes.toString(), value);
+                    hit(doc, stats.crimes);
+                }
+            }
+        });
+        register(KEYS.Judges, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                String value = "";
+                SentenceSpans sentences = doc.getSentences();
+                Matcher present = doc.matcher(JUDGES_1_PATTERN, sentences.getText());
+                Matcher concur = doc.matcher(JUDGES_2_PATTERN, sentences.getText());
+                Matcher concurList = doc.matcher(JUDGES_3_PATTERN, sentences.getText());
+                for (int i : sentencesZoneFirst(doc, sentences, Zone.PANEL, Zone.PANEL)) {
+                    if (sentences.contains(i, "concur except")) { // Filter out 'All concur except .. '
+                        continue;
                     }
-                    
-                    if (!value.isEmpty()) {
-                        // also find ADA, which is next to DA, in parenthesis
-                        int index = text.toLowerCase().indexOf("district attorney");
-                        if (index > 0) {
-                            m = DA_2_PATTERN.matcher(textFlow.substring(index));
-                            if (m.find()) {
-                                value = m.group();
-                                value = inParentheses(value);
-                                value = value.substring(0, value.length() - "of counsel".length());
-                                value = sanitize(value);
-                                info.put(KEYS.ADA.toString(), value);
-                            }
+                    int start = sentences.getStart(i);
+                    int end = sentences.getEnd(i);
+                    if (present.region(start, end).find()) {
+                        value = sentences.getText().substring(start + present.group(1).length(), end);
+                        break;
+                    } else if (concur.region(start, end).find()) {
+                        value = sentences.getText().substring(start, end - "concur.".length());
+                        break;
+                    } else if (concurList.region(start, end).find()) {
+                        value = concurList.group(1);
+                        if (value.startsWith("-")) {
+                            value = value.substring(1);
                         }
-                    } else {
-			            ++stats.districtAttorneyProblem;
-                    }
-                    continue;
-
-                case ADA:
-                    // just done above, together with District Attorney
-                    continue;
-
-                case HarmlessError:
-                    m = HARMLESS_ERROR_PATTERN.matcher(text);
-                    if (m.find()) {
-                        info.put(key.toString(), sanitize(m.group()));
+                        break;
                     }
-
-                    continue;
-
-                case ProsecutMisconduct:
-                    //regex = "prosecut[a-zA-Z\\s]*misconduct";
-                    m = PROSECUTOR_MISCONDUCT_PATTERN.matcher(text);
-                    if (m.find()) {
-                        info.put(key.toString(), sanitize(m.group()));
+                }
+                if (!value.isEmpty()) {
+                    value = sanitize(value);
+                    // occasionally list of judges ends with (Filed .. )
+                    int idx = value.indexOf("(Filed");
+                    if (idx >= 0) {
+                        value = value.substring(0, idx);
                     }
-                    continue;
-
-
-                default:
-                    logger.error("Aren't you forgetting something, Mr.? How about {} field?", key.toString());
-
+                    info.put(KEYS.Judges.toString(), value);
+                    hit(doc, stats.judges);
+                }
             }
-
-
-        }
-        boolean gapParsed = false;
-        if (info.containsKey(KEYS.FirstDate.toString()) && info.containsKey(KEYS.AppealDate.toString())) {
-            String firstDateStr = info.get(KEYS.FirstDate.toString());
-            String appealDateStr = info.get(KEYS.AppealDate.toString());
-            Date firstDate = null;
-            Date appealDate = null;
-            if (!firstDateStr.isEmpty()) {
-                try {
-                    firstDate = dateFormat.parse(firstDateStr);
-                } catch (NumberFormatException | ParseException e) {
-                    logger.error("Date parsing error for {} in {}", firstDateStr, file.getName());
+        });
+        register(KEYS.Defense, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                info.put(KEYS.Defense.toString(), findAll(doc.getPhraseMatches(phraseAutomaton)[DEFENSE_SET]));
+            }
+        });
+        register(KEYS.DefendantAppellant, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                Matcher m = doc.matcher(DEFENDANT_APPELLANT_PATTERN, doc.getText());
+                info.put(KEYS.DefendantAppellant.toString(), m.find() ? "1" : "0");
+            }
+        });
+        register(KEYS.DefendantRespondent, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                Matcher m = doc.matcher(DEFENDANT_RESPONDENT_PATTERN, doc.getText());
+                info.put(KEYS.DefendantRespondent.toString(), m.find() ? "1" : "0");
+            }
+        });
+        register(KEYS.HarmlessError, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                // the sentence can't start before the last period in front of the first "harmless",
+                // so start there instead of trying every position up to it
+                int harmless = doc.getLowerCase().indexOf("harmless");
+                if (harmless < 0) return;
+                int from = doc.getLowerCase().length() == doc.getText().length() ? doc.getText().lastIndexOf('.', harmless) + 1 : 0;
+                Matcher m = doc.matcher(HARMLESS_ERROR_PATTERN, doc.getText());
+                if (m.region(from, doc.getText().length()).find()) {
+                    info.put(KEYS.HarmlessError.toString(), sanitize(m.group()));
                 }
             }
-            if (!appealDateStr.isEmpty()) {
-                try {
-                    appealDate = dateFormat.parse(appealDateStr);
-                } catch (NumberFormatException | ParseException e) {
-                    logger.error("Date parsing error for {} in {}", appealDateStr, file.getName());
-                }
-            }
-            if (firstDate != null && appealDate != null) {
-                long gap = appealDate.getTime() - firstDate.getTime();
-                int gapDays = (int) (gap / 1000 / 60 / 60 / 24);
-                if (gapDays > 0) {
-                    info.put(KEYS.Gap_days.toString(), Integer.toString(gapDays));
-                    gapParsed = true;
-                }
-            }
-        }
-        if (gapParsed) ++stats.gapDays;
-//        if (info.containsKey(KEYS.DefendantAppellant.toString())) {
-//            // the answer is in the previous line
-//            value = info.get(KEYS.DefendantAppellant.toString());
-//            int valueInd = text.indexOf(value);
-//            if (valueInd > 0) {
-//                int endLine = text.lastIndexOf("\n", valueInd);
-//                if (endLine > 0) {
-//                    int startLine = text.lastIndexOf("\n", endLine - 1);
-//                    if (startLine > 0) {
-//                        value = text.substring(startLine + 1, endLine);
-//                        value = sanitize(value);
-//                        info.put(KEYS.DefendantAppellant.toString(), value);
-//                    }
-//                }
-//            }
-//        }
-//        if (info.containsKey(KEYS.DefendantRespondent.toString())) {
-//            // the answer is in the previous line
-//            value = info.get(KEYS.DefendantRespondent.toString());
-//            int valueInd = text.indexOf(value);
-//            if (valueInd > 0) {
-//                int endLine = text.lastIndexOf("\n", valueInd);
-//                if (endLine > 0) {
-//                    int startLine = text.lastIndexOf("\n", endLine - 1);
-//                    if (startLine > 0) {
-//                        value = text.substring(startLine + 1, endLine);
-//                        value = sanitize(value);
-//                        info.put(KEYS.DefendantRespondent.toString(), value);
-//                    }
+        });
+        register(KEYS.ProsecutMisconduct, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                //regex = "prosecut[a-zA-Z\\s]*misconduct";
+                Matcher m = doc.matcher(PROSECUTOR_MISCONDUCT_PATTERN, doc.getText());
+                if (m.find()) {
+                    info.put(KEYS.ProsecutMisconduct.toString(), sanitize(m.group()));
+                }
+            }
+        });
+        register(KEYS.DocumentLength, new FieldExtractor() {
+            @Override
+            public void extract(DocumentContext doc, Map<String, String> info) {
+                info.put(KEYS.DocumentLength.toString(), Integer.toString(doc.getText().length()));
+            }
+        });
+//        register(KEYS.SexOffender, new FieldExtractor() {
+//            @Override
+//            public void extract(DocumentContext doc, Map<String, String> info) {
+//                boolean sexOffender = isSexOffender(doc);
+//                info.put(KEYS.SexOffender.toString(), sexOffender ? "Y" : "");
+//                if (sexOffender) {
+//                    stats.sexOffence.incrementAndGet();
 //                }
 //            }
-//        }
-        return info;
+//        });
     }
 
     public static void main(String[] args) {
@@ -599,58 +724,244 @@ public class NYAppealParse {
             e.printStackTrace();
         }
         System.out.print(instance.stats.toString());
+        instance.writeStatsJson();
+    }
+
+    Stats getStats() {
+        return stats;
+    }
+
+    private void writeStatsJson() {
+        if (outputFile == null) return;
+        File file = new File(outputFile + ".stats.json");
+        try {
+            FileUtils.writeStringToFile(file, stats.toJson());
+        } catch (IOException e) {
+            logger.warn("Could not write the stats to {}", file, e);
+        }
     }
 
     private static void formOptions() {
         options = new Options();
-        options.addOption("i", "inputDir", true, "Input directory");
+        options.addOption("i", "inputDir", true, "Input directory, or .tar, .tar.gz or .zip archive");
         options.addOption("o", "outputFile", true, "Output file, .csv will be added");
         options.addOption("b", "breakSize", true, "Output file size in lines");
+        options.addOption("B", "breakBytes", true, "Output file size in bytes, by default only the lines count");
+        options.addOption("t", "threads", true, "Number of parsing threads, default is 1");
+        options.addOption("f", "fields", true, "Comma separated fields to output, default is all: " + Arrays.toString(KEYS.values()));
+        options.addOption("n", "incremental", false, "Only parse new and changed files, keeping the rest of the existing output");
+        options.addOption("T", "documentBudget", true, "Milliseconds to parse a document, the fields past it are left empty, default is no limit");
+        options.addOption("F", "fieldBudget", true, "Milliseconds to parse a field of a document, default is no limit");
     }
 
     private void parseDocuments() throws IOException {
+        if (incremental) {
+            // the rows to keep have to be read before the old output is cleaned up
+            previousManifest = ParseManifest.load(manifestFile());
+            previousRows = readPreviousRows();
+            manifest = new ParseManifest();
+            version = parserVersion();
+        }
         cleanupFirst();
-        int lineCount = 0;
-        writeHeader();
-        File[] files = new File(inputDir).listFiles();
-        Arrays.sort(files);
-        stats.filesInDir = files.length;
-
-        for (File file : files) {
-            if (files == null) {
+        output = new RollingCsvWriter(outputFile, header(), breakSize, breakBytes, OUTPUT_QUEUE_SIZE);
+        try {
+            if (!new File(inputDir).exists()) {
                 logger.warn("No files found in input");
                 return;
             }
-            try {
-                // right now, we analyze only "txt", and consider the rest as garbage
-                if (!file.getName().endsWith("txt")) continue;
-                ++stats.docs;
-                StringBuffer buf = new StringBuffer();
-                Map<String, String> answer = extractInfo(file);
-                for (int e = 0; e < KEYS.values().length; ++e) {
-                    String key = KEYS.values()[e].toString();
-                    String value = "";
-                    if (answer.containsKey(key)) {
-                        value = answer.get(key);
+            try (DocumentSource source = DocumentSource.open(inputDir)) {
+                if (threads > 1) {
+                    parseInParallel(source);
+                } else {
+                    DocumentSource.Entry doc;
+                    while ((doc = nextDoc(source)) != null) {
+                        writeRow(doc, rowFor(doc));
                     }
-                    buf.append(value).append(separator);
                 }
-                buf.deleteCharAt(buf.length() - 1);
-                buf.append("\n");
-                FileUtils.write(new File(outputFile + stats.fileNumber + ".csv"), buf.toString(), true);
-                ++stats.metadata;
-                ++lineCount;
-                if (lineCount >= breakSize) {
-                    buf = new StringBuffer();
-                    ++stats.fileNumber;
-                    lineCount = 1;
-                    writeHeader();
-                    System.out.println("Writing parsed file " + stats.fileNumber);
+            }
+        } finally {
+            output.close();
+            stats.fileNumber = output.getFileNumber();
+        }
+        if (incremental) {
+            manifest.save(manifestFile());
+        }
+    }
+
+    /**
+     * @return the next document to parse, or null after the last one
+     */
+    private DocumentSource.Entry nextDoc(DocumentSource source) throws IOException {
+        DocumentSource.Entry entry;
+        while ((entry = source.next()) != null) {
+            stats.filesInDir.incrementAndGet();
+            // right now, we analyze only "txt", and consider the rest as garbage
+            if (entry.getName().endsWith("txt")) return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Spread extraction over a pool of workers. Documents are taken from the source a window at a time, and within
+     * a window the largest are started first, so that a long opinion does not become the tail of the window.
+     * The next window is submitted before the rows of the previous one are written, so the workers don't run dry,
+     * and the rows are still written in the order of the source.
+     */
+    private void parseInParallel(DocumentSource source) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<DocumentSource.Entry> previousDocs = Collections.emptyList();
+            List<Future<String>> previousFutures = Collections.emptyList();
+            while (true) {
+                List<DocumentSource.Entry> docs = new ArrayList<>();
+                DocumentSource.Entry doc;
+                while (docs.size() < PARSE_WINDOW && (doc = nextDoc(source)) != null) {
+                    docs.add(doc);
+                }
+                List<Future<String>> rows = submitLargestFirst(pool, docs);
+                for (int i = 0; i < previousFutures.size(); ++i) {
+                    writeRow(previousDocs.get(i), previousFutures.get(i).get());
+                }
+                if (docs.isEmpty()) break;
+                previousDocs = docs;
+                previousFutures = rows;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Parsing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Parsing failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the future rows, in the order of the documents
+     */
+    private List<Future<String>> submitLargestFirst(ExecutorService pool, final List<DocumentSource.Entry> docs) throws IOException {
+        final long[] sizes = new long[docs.size()];
+        Integer[] bySize = new Integer[docs.size()];
+        for (int i = 0; i < bySize.length; ++i) {
+            sizes[i] = docs.get(i).getSize();
+            bySize[i] = i;
+        }
+        Arrays.sort(bySize, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(sizes[o2], sizes[o1]);
+            }
+        });
+        List<Future<String>> rows = new ArrayList<>(Collections.<Future<String>>nCopies(docs.size(), null));
+        for (Integer index : bySize) {
+            final DocumentSource.Entry doc = docs.get(index);
+            rows.set(index, pool.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return rowFor(doc);
+                }
+            }));
+        }
+        return rows;
+    }
+
+    /**
+     * In an incremental run, the previous row of the document is kept if it and the parser have not changed since.
+     *
+     * @return the output line for the document, or null if it could not be processed
+     */
+    private String rowFor(DocumentSource.Entry doc) {
+        byte[] content;
+        try {
+            content = doc.getContent();
+        } catch (IOException e) {
+            logger.error("Error reading file {}", doc.getName(), e);
+            return null;
+        }
+        if (incremental) {
+            String hash = ParseManifest.hash(content);
+            hashes.put(doc.getName(), hash);
+            String previous = previousRows.get(doc.getName());
+            if (previous != null && previousManifest.isUnchanged(doc.getName(), hash, version)) {
+                stats.unchanged.incrementAndGet();
+                // counted as if parsed, so that the stats are those of all the documents
+                List<String> previousHits = previousManifest.get(doc.getName()).hits;
+                stats.addHits(previousHits);
+                hits.put(doc.getName(), previousHits);
+                return previous;
+            }
+        }
+        return formatRow(doc.getName(), new String(content, Charset.defaultCharset()));
+    }
+
+    /**
+     * @return the output line for the file, or null if it could not be processed
+     */
+    String formatRow(String name, String text) {
+        DocumentContext doc = toDocument(name, text);
+        hit(doc, stats.docs);
+        StringBuilder buf = new StringBuilder();
+        Map<String, String> answer = extractInfo(doc);
+        if (incremental) {
+            hits.put(name, doc.getHits());
+        }
+        for (KEYS field : outputFields) {
+            String key = field.toString();
+            String value = "";
+            if (answer.containsKey(key)) {
+                value = answer.get(key);
+            }
+            buf.append(value).append(separator);
+        }
+        buf.deleteCharAt(buf.length() - 1);
+        buf.append("\n");
+        return buf.toString();
+    }
+
+    private void writeRow(DocumentSource.Entry doc, String row) throws IOException {
+        if (row == null) return;
+        output.write(row);
+        stats.metadata.incrementAndGet();
+        if (incremental) {
+            manifest.put(doc.getName(), new ParseManifest.Entry(hashes.get(doc.getName()), version, hits.get(doc.getName())));
+        }
+    }
+
+    /**
+     * Read the rows of the existing output, by the file they come from. Parts written with other fields are skipped,
+     * and the manifest entries of their files will not match the current parser version anyway.
+     */
+    private Map<String, String> readPreviousRows() throws IOException {
+        Map<String, String> rows = new HashMap<>();
+        String header = header();
+        int fileColumn = new ArrayList<>(outputFields).indexOf(KEYS.File);
+        for (int part = 0; ; ++part) {
+            File file = new File(outputFile + part + ".csv");
+            if (!file.exists()) break;
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line = reader.readLine();
+                if (line == null || !(line + "\n").equals(header)) {
+                    logger.warn("Not reusing {}, it has different columns", file);
+                    continue;
+                }
+                while ((line = reader.readLine()) != null) {
+                    String[] values = line.split("\\" + separator, -1);
+                    if (values.length > fileColumn) {
+                        rows.put(values[fileColumn], line + "\n");
+                    }
                 }
-            } catch (IOException e) {
-                logger.error("Error processing file {} " + file.getName());
             }
         }
+        return rows;
+    }
+
+    private File manifestFile() {
+        return new File(outputFile + ".manifest");
+    }
+
+    // rows of other fields can't be reused either, so they are part of the version
+    private String parserVersion() {
+        return PARSER_VERSION + ":" + Integer.toHexString(outputFields.toString().hashCode());
     }
 
     private boolean parseOptions(String[] args) throws org.apache.commons.cli.ParseException {
@@ -661,10 +972,38 @@ public class NYAppealParse {
         if (cmd.hasOption("breakSize")) {
             breakSize = Integer.parseInt(cmd.getOptionValue("breakSize"));
         }
+        if (cmd.hasOption("breakBytes")) {
+            breakBytes = Long.parseLong(cmd.getOptionValue("breakBytes"));
+        }
+        if (cmd.hasOption("documentBudget")) {
+            documentBudget = Long.parseLong(cmd.getOptionValue("documentBudget"));
+        }
+        if (cmd.hasOption("fieldBudget")) {
+            fieldBudget = Long.parseLong(cmd.getOptionValue("fieldBudget"));
+        }
+        if (cmd.hasOption("threads")) {
+            threads = Integer.parseInt(cmd.getOptionValue("threads"));
+        }
+        if (cmd.hasOption("fields")) {
+            outputFields = EnumSet.noneOf(KEYS.class);
+            for (String field : cmd.getOptionValue("fields").split(",")) {
+                try {
+                    outputFields.add(KEYS.valueOf(field.trim()));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unknown field " + field + ", please use some of " + Arrays.toString(KEYS.values()));
+                    return false;
+                }
+            }
+        }
+        incremental = cmd.hasOption("incremental");
+        if (incremental && !outputFields.contains(KEYS.File)) {
+            System.out.println("Incremental parsing needs the " + KEYS.File + " field, to tell which file a row comes from");
+            return false;
+        }
         return true;
     }
 
-    private String sanitize(String value) {
+    String sanitize(String value) {
         // remove all random occurrences of the separator
         value = value.replaceAll("\\" + separator, "");
         // limit the length
@@ -687,16 +1026,14 @@ public class NYAppealParse {
         }
     }
 
-    private void writeHeader() throws IOException {
-        StringBuffer buf = new StringBuffer();
-        for (int e = 0; e < KEYS.values().length; ++e) {
-            String key = KEYS.values()[e].toString();
-            buf.append(key).append(separator);
+    String header() {
+        StringBuilder buf = new StringBuilder();
+        for (KEYS field : outputFields) {
+            buf.append(field.toString()).append(separator);
         }
         buf.deleteCharAt(buf.length() - 1);
         buf.append("\n");
-        // create new file, append = false
-        FileUtils.write(new File(outputFile + stats.fileNumber + ".csv"), buf.toString(), false);
+        return buf.toString();
     }
 
     private String inParentheses(String text) {
@@ -709,11 +1046,10 @@ public class NYAppealParse {
         }
     }
 
-    private String findAll(String text, Pattern[] patterns) {
+    private String findAll(String[] matches) {
         StringBuilder results = new StringBuilder();
-        for (Pattern pattern : patterns) {
-            Matcher m = pattern.matcher(text);
-            if (m.find()) results.append(sanitize(m.group())).append(";");
+        for (String match : matches) {
+            if (match != null) results.append(sanitize(match)).append(";");
         }
         if (results.length() > 0) results.deleteCharAt(results.length() - 1);
         return results.toString();
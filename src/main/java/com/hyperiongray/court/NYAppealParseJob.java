@@ -0,0 +1,173 @@
+package com.hyperiongray.court;
+
+import org.apache.commons.cli.*;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * NYAppealParse as a MapReduce job, so that re-parsing the whole archive can be spread over a cluster.
+ * The input is SequenceFiles of (file name, content), as NYAppealPack writes them. Mappers extract the rows, and the
+ * reducers write them out sorted by file name, each part-r-N file a CSV with the same header and columns as those
+ * of NYAppealParse.
+ * <p/>
+ * The Stats counters of the mappers go out as job counters, which Hadoop adds up over the tasks, and are printed
+ * as NYAppealParse prints them. Runs in local mode as well, with -D mapred.job.tracker=local -fs file:///
+ */
+public class NYAppealParseJob extends Configured implements Tool {
+    private static final Logger logger = LoggerFactory.getLogger(NYAppealParseJob.class);
+    public static final String STATS_GROUP = "Stats";
+    private static Options options;
+
+    private Stats stats = new Stats();
+
+    public static class ParseMapper extends Mapper<Text, BytesWritable, Text, Text> {
+        private final NYAppealParse parser = new NYAppealParse();
+        private final Text row = new Text();
+
+        @Override
+        protected void map(Text name, BytesWritable content, Context context) throws IOException, InterruptedException {
+            parser.getStats().filesInDir.incrementAndGet();
+            // right now, we analyze only "txt", and consider the rest as garbage
+            if (!name.toString().endsWith("txt")) return;
+            String text = new String(content.getBytes(), 0, content.getLength(), Charset.defaultCharset());
+            String line = parser.formatRow(name.toString(), text);
+            if (line == null) return;
+            // the output format adds the line break back
+            row.set(line.substring(0, line.length() - 1));
+            context.write(name, row);
+            parser.getStats().metadata.incrementAndGet();
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            for (Map.Entry<String, Integer> entry : parser.getStats().getCounters().entrySet()) {
+                context.getCounter(STATS_GROUP, entry.getKey()).increment(entry.getValue());
+            }
+        }
+    }
+
+    public static class CsvReducer extends Reducer<Text, Text, NullWritable, Text> {
+
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            String header = new NYAppealParse().header();
+            context.write(NullWritable.get(), new Text(header.substring(0, header.length() - 1)));
+        }
+
+        @Override
+        protected void reduce(Text name, Iterable<Text> rows, Context context) throws IOException, InterruptedException {
+            for (Text row : rows) {
+                context.write(NullWritable.get(), row);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        NYAppealParseJob instance = new NYAppealParseJob();
+        int exitCode = ToolRunner.run(new Configuration(), instance, args);
+        if (exitCode == 0) {
+            System.out.print(instance.stats.toString());
+        }
+        System.exit(exitCode);
+    }
+
+    private static void formOptions() {
+        options = new Options();
+        options.addOption("i", "input", true, "SequenceFiles written by NYAppealPack, comma separated");
+        options.addOption("o", "outputDir", true, "Output directory, replaced if it exists");
+        options.addOption("r", "reducers", true, "Reducers, one output file each, default is 1");
+    }
+
+    /**
+     * @param args the options of this job, after Hadoop's own such as -D, -fs and -jt are taken out
+     */
+    @Override
+    public int run(String[] args) throws Exception {
+        formOptions();
+        if (args.length == 0) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("NYAppealParseJob - extract legal information from court cases on Hadoop", options);
+            return 1;
+        }
+        CommandLine cmd = new GnuParser().parse(options, args);
+        String input = cmd.getOptionValue("input");
+        String outputDir = cmd.getOptionValue("outputDir");
+        if (input == null || outputDir == null) {
+            System.out.println("Please provide input and output");
+            return 1;
+        }
+        int reducers = 1;
+        if (cmd.hasOption("reducers")) {
+            try {
+                reducers = Integer.parseInt(cmd.getOptionValue("reducers"));
+            } catch (NumberFormatException e) {
+                logger.error("Wrong number of reducers");
+                return 1;
+            }
+        }
+        return parse(input, new Path(outputDir), reducers) ? 0 : 1;
+    }
+
+    /**
+     * Run the job and add its counters to the stats.
+     *
+     * @return true if the job succeeded
+     */
+    public boolean parse(String input, Path output, int reducers) throws IOException, InterruptedException,
+            ClassNotFoundException {
+        Configuration conf = getConf();
+        FileSystem fs = output.getFileSystem(conf);
+        if (fs.exists(output)) {
+            fs.delete(output, true);
+        }
+        Job job = new Job(conf, "NYAppealParse");
+        job.setJarByClass(NYAppealParseJob.class);
+        job.setInputFormatClass(SequenceFileInputFormat.class);
+        FileInputFormat.addInputPaths(job, input);
+        job.setMapperClass(ParseMapper.class);
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(Text.class);
+        job.setReducerClass(CsvReducer.class);
+        job.setNumReduceTasks(reducers);
+        job.setOutputKeyClass(NullWritable.class);
+        job.setOutputValueClass(Text.class);
+        job.setOutputFormatClass(TextOutputFormat.class);
+        FileOutputFormat.setOutputPath(job, output);
+        if (!job.waitForCompletion(true)) {
+            return false;
+        }
+        Map<String, Long> counts = new HashMap<>();
+        for (Counter counter : job.getCounters().getGroup(STATS_GROUP)) {
+            counts.put(counter.getName(), counter.getValue());
+        }
+        stats.addCounters(counts);
+        stats.fileNumber = reducers - 1;
+        return true;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,405 @@
+package com.hyperiongray.court;
+
+import com.google.common.io.Files;
+import com.hyperiongray.pull.GetPull;
+import com.hyperiongray.pull.HostLimiter;
+import com.hyperiongray.pull.PullClient;
+import org.apache.commons.cli.*;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collect and parse in one run: decisions go from the site to the CSV output without a round-trip through the disk.
+ * Each document passes through three stages, download, html to text and extraction, and then to the output.
+ * The stages have their own pools, and bounded queues between them, so that a slow stage holds the others back.
+ * The html and txt files of NYAppealCollect are only written if asked for.
+ * <p/>
+ * Documents are numbered in the order they are listed, and their rows are written in that order, so the output
+ * is the same however the stages are scheduled. A row finished ahead of its turn waits in a buffer, and listing
+ * waits while the buffer is full.
+ */
+public class NYAppealPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(NYAppealPipeline.class);
+    private static Options options;
+    private final static int OUTPUT_QUEUE_SIZE = 1000;
+    // documents listed but not yet written, a late one holds back the rows of those after it
+    private final static int REORDER_WINDOW = 1000;
+
+    private String outputFile;
+    private String inputDir;
+    private String keepDir;
+    private int downloadThreads = 8;
+    private int textThreads = Runtime.getRuntime().availableProcessors();
+    private int extractThreads = Runtime.getRuntime().availableProcessors();
+    private int queueDepth = 64; // documents waiting for each stage
+    private int perHost = 4;
+    private int breakSize = 10000;
+    private float sample = 1; // default is to download all
+    private int delay = 20; // milliseconds
+    private Date startTime;
+
+    private final NYAppealParse parser = new NYAppealParse();
+    private TextExtractor textExtractor = new HtmlTextExtractor(new TikaTextExtractor());
+    private final AtomicInteger documentsDownloaded = new AtomicInteger();
+    private HostLimiter hostLimiter;
+    private CloseableHttpClient client;
+    private RollingCsvWriter output;
+    private Stage downloads;
+    private Stage texts;
+    private Stage extracts;
+    private long documentsListed;
+    // finished rows waiting for those listed before them, null for documents that gave none
+    private final Map<Long, String> finished = new HashMap<>();
+    private long nextToWrite;
+    private final Semaphore window = new Semaphore(REORDER_WINDOW);
+
+    public static void main(String[] args) {
+        formOptions();
+        if (args.length == 0) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("NYAppealPipeline - downloads court cases and extracts legal information from them", options);
+            return;
+        }
+        NYAppealPipeline instance = new NYAppealPipeline();
+        try {
+            if (!instance.parseParameters(args)) {
+                return;
+            }
+            instance.startTime = new Date();
+            instance.run();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        System.out.println("Documents downloaded: " + instance.documentsDownloaded.get());
+        System.out.print(instance.parser.getStats().toString());
+        instance.writeStatsJson();
+    }
+
+    private void writeStatsJson() {
+        if (outputFile == null) return;
+        File file = new File(outputFile + ".stats.json");
+        try {
+            FileUtils.writeStringToFile(file, parser.getStats().toJson());
+        } catch (IOException e) {
+            logger.warn("Could not write the stats to {}", file, e);
+        }
+    }
+
+    private static void formOptions() {
+        options = new Options();
+        options.addOption("o", "outputFile", true, "Output file, .csv will be added");
+        options.addOption("i", "inputDir", true, "Take the html pages from this directory, or .tar, .tar.gz or .zip archive, instead of the site");
+        options.addOption("k", "keepFiles", true, "Also write the html and txt files, as NYAppealCollect does, into this directory");
+        options.addOption("d", "downloadThreads", true, "Documents downloading at the same time, default is 8");
+        options.addOption("x", "textThreads", true, "Threads turning html into text, default is one per processor");
+        options.addOption("e", "extractThreads", true, "Threads extracting the fields, default is one per processor");
+        options.addOption("q", "queueDepth", true, "Documents waiting for each stage before the one feeding it waits, default is 64");
+        options.addOption("p", "perHost", true, "Requests in flight to one host, default is 4");
+        options.addOption("b", "breakSize", true, "Output file size in lines");
+        options.addOption("s", "sample", true, "Sample the data, i.e. .01 means download only 1% of all files, the same ones each run");
+        options.addOption("a", "tika", false, "Turn all documents into text with Tika, not only those that are not html");
+    }
+
+    private boolean parseParameters(String[] args) throws ParseException {
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmd = parser.parse(options, args);
+        outputFile = cmd.getOptionValue("outputFile");
+        if (outputFile == null) {
+            System.out.println("Please provide output file name");
+            return false;
+        }
+        inputDir = cmd.getOptionValue("inputDir");
+        keepDir = cmd.getOptionValue("keepFiles");
+        if (cmd.hasOption("tika")) {
+            textExtractor = new TikaTextExtractor();
+        }
+        try {
+            if (cmd.hasOption("downloadThreads")) {
+                downloadThreads = Integer.parseInt(cmd.getOptionValue("downloadThreads"));
+            }
+            if (cmd.hasOption("textThreads")) {
+                textThreads = Integer.parseInt(cmd.getOptionValue("textThreads"));
+            }
+            if (cmd.hasOption("extractThreads")) {
+                extractThreads = Integer.parseInt(cmd.getOptionValue("extractThreads"));
+            }
+            if (cmd.hasOption("queueDepth")) {
+                queueDepth = Integer.parseInt(cmd.getOptionValue("queueDepth"));
+            }
+            if (cmd.hasOption("perHost")) {
+                perHost = Integer.parseInt(cmd.getOptionValue("perHost"));
+            }
+            if (cmd.hasOption("breakSize")) {
+                breakSize = Integer.parseInt(cmd.getOptionValue("breakSize"));
+            }
+            if (cmd.hasOption("sample")) {
+                sample = Float.parseFloat(cmd.getOptionValue("sample"));
+            }
+        } catch (NumberFormatException e) {
+            logger.error("Wrong number format: {}", e.getMessage());
+            return false;
+        }
+        hostLimiter = new HostLimiter(perHost);
+        return true;
+    }
+
+    private void run() throws IOException, InterruptedException {
+        prepareOutput();
+        client = PullClient.create(downloadThreads + 1, perHost);
+        output = new RollingCsvWriter(outputFile, parser.header(), breakSize, 0, OUTPUT_QUEUE_SIZE);
+        downloads = new Stage(downloadThreads, queueDepth);
+        texts = new Stage(textThreads, queueDepth);
+        extracts = new Stage(extractThreads, queueDepth);
+        try {
+            if (inputDir != null) {
+                try (DocumentSource source = DocumentSource.open(inputDir)) {
+                    listLocal(source);
+                }
+            } else {
+                listSite();
+            }
+            // each stage is done once the one before it is
+            downloads.finish();
+            texts.finish();
+            extracts.finish();
+        } finally {
+            downloads.shutdownNow();
+            texts.shutdownNow();
+            extracts.shutdownNow();
+            output.close();
+            client.close();
+            parser.getStats().fileNumber = output.getFileNumber();
+        }
+        logger.info("Pipeline time (sec): {}", (new Date().getTime() - startTime.getTime()) / 1000);
+    }
+
+    /**
+     * Index pages are listed here, waiting whenever the downloads are behind.
+     */
+    private void listSite() throws InterruptedException {
+        for (String url : new NYAppealUtil().listURLs()) {
+            logger.debug("URL for downloads: {}", url);
+            for (final String downloadLink : new NYAppealUtil().listDownloadLinks(pull(url))) {
+                if (!CrawlShard.sampled(downloadLink, sample)) {
+                    continue;
+                }
+                final long sequence = nextSequence();
+                downloads.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        download(sequence, downloadLink);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Pages saved earlier, by NYAppealCollect or with --keepFiles, take the place of the downloads.
+     */
+    private void listLocal(DocumentSource source) throws IOException, InterruptedException {
+        DocumentSource.Entry entry;
+        while ((entry = source.next()) != null) {
+            final DocumentSource.Entry page = entry;
+            final long sequence = nextSequence();
+            downloads.submit(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] html = null;
+                    try {
+                        html = page.getContent();
+                    } catch (IOException e) {
+                        logger.error("Problem reading {}", page.getName());
+                    }
+                    fetched(sequence, page.getName(), html);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of the next document, once the reorder buffer has room for it
+     */
+    private long nextSequence() throws InterruptedException {
+        window.acquire();
+        return documentsListed++;
+    }
+
+    private void download(long sequence, String downloadLink) {
+        logger.debug("Download link: {}", downloadLink);
+        byte[] html = pullBytes(downloadLink);
+        if (html == null) {
+            logger.error("Problem downloading {}", downloadLink);
+        }
+        fetched(sequence, new File(downloadLink).getName(), html);
+    }
+
+    /**
+     * @param html the page, null if it could not be had
+     */
+    private void fetched(final long sequence, final String fileName, final byte[] html) {
+        boolean passedOn = false;
+        try {
+            if (html == null) {
+                return;
+            }
+            documentsDownloaded.incrementAndGet();
+            if (keepDir != null) {
+                Files.write(html, new File(keepDir + "/html/" + fileName));
+            }
+            texts.submit(new Runnable() {
+                @Override
+                public void run() {
+                    toText(sequence, fileName, html);
+                }
+            });
+            passedOn = true;
+        } catch (IOException e) {
+            logger.error("Problem writing {}", fileName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!passedOn) {
+                finish(sequence, null);
+            }
+        }
+    }
+
+    private void toText(final long sequence, String fileName, byte[] html) {
+        // named as the txt files are, so the rows are the same as those of NYAppealParse
+        final String name = fileName + ".txt";
+        boolean passedOn = false;
+        try {
+            StringWriter writer = new StringWriter();
+            textExtractor.extract(new ByteArrayInputStream(html), writer);
+            final String text = writer.toString();
+            if (keepDir != null) {
+                Files.write(text, new File(keepDir + "/txt/" + name), Charset.defaultCharset());
+            }
+            extracts.submit(new Runnable() {
+                @Override
+                public void run() {
+                    extract(sequence, name, text);
+                }
+            });
+            passedOn = true;
+        } catch (IOException e) {
+            logger.error("Problem parsing {}", fileName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!passedOn) {
+                finish(sequence, null);
+            }
+        }
+    }
+
+    private void extract(long sequence, String name, String text) {
+        parser.getStats().filesInDir.incrementAndGet();
+        String row = null;
+        try {
+            row = parser.formatRow(name, text);
+        } finally {
+            finish(sequence, row);
+        }
+    }
+
+    /**
+     * Write the row of the document if its turn has come, together with those after it that were waiting for it.
+     *
+     * @param row null if the document gave none
+     */
+    private synchronized void finish(long sequence, String row) {
+        finished.put(sequence, row);
+        while (finished.containsKey(nextToWrite)) {
+            String next = finished.remove(nextToWrite);
+            ++nextToWrite;
+            window.release();
+            if (next == null) continue;
+            try {
+                output.write(next);
+                parser.getStats().metadata.incrementAndGet();
+            } catch (IOException e) {
+                logger.error("Problem writing row {}", nextToWrite - 1, e);
+            }
+        }
+    }
+
+    private String pull(String url) {
+        try {
+            hostLimiter.acquire(url);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+        try {
+            String response = newPull(url).getResponse();
+            NYAppealUtil.sleep(delay);
+            return response;
+        } finally {
+            hostLimiter.release(url);
+        }
+    }
+
+    /**
+     * @return the document as served, null on errors
+     */
+    private byte[] pullBytes(String url) {
+        try {
+            hostLimiter.acquire(url);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            GetPull pull = newPull(url);
+            byte[] response = pull.getResponseBytes();
+            NYAppealUtil.sleep(delay);
+            // an error page is not a decision
+            if (pull.getStatusCode() != HttpStatus.SC_OK) {
+                logger.error("Status {} downloading {}", pull.getStatusCode(), url);
+                return null;
+            }
+            return response;
+        } finally {
+            hostLimiter.release(url);
+        }
+    }
+
+    private GetPull newPull(String url) {
+        GetPull pull = new GetPull();
+        pull.setClient(client);
+        pull.setUrl(url);
+        return pull;
+    }
+
+    private void prepareOutput() {
+        File prefix = new File(outputFile).getAbsoluteFile();
+        prefix.getParentFile().mkdirs();
+        // parts of an earlier run, there may be more of them than this one will write
+        File[] files = prefix.getParentFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(prefix.getName()) && file.getName().endsWith(".csv")) file.delete();
+            }
+        }
+        if (keepDir != null) {
+            new File(keepDir + "/html").mkdirs();
+            new File(keepDir + "/txt").mkdirs();
+        }
+    }
+}
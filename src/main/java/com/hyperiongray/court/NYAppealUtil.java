@@ -3,14 +3,13 @@ package com.hyperiongray.court;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,7 +28,6 @@ public class NYAppealUtil {
     private static final String linkRegex = "\\./3dseries.+\\.htm";
     private static final String downloadBase = "http://www.courts.state.ny.us/reporter/";
 
-    private static String NAME_PLACEHOLDER = "%name%";
     private static Pattern INITIALS_PATTERN_1 = Pattern.compile("(\\w{3,}, [A-Z]\\.[A-Z]\\.)"); // Prudenti P.J.
     private static Pattern INITIALS_PATTERN_2 = Pattern.compile("([A-Z]\\. \\w{3,}, [A-Z]{2,2}\\.)"); // S. Miller JJ.
     private static Pattern INITIALS_PATTERN_3 = Pattern.compile("(\\w{3,}, [A-Z]{2,2}\\.)"); // Miller JJ.
@@ -39,21 +37,30 @@ public class NYAppealUtil {
     private static Pattern INITIALS_PATTERN_7 = Pattern.compile("(\\w{3,} \\w{3,}, J\\.)", Pattern.CASE_INSENSITIVE); // William Smith J.
 
     private static Pattern[] INITIAL_PATTERNS = {INITIALS_PATTERN_5, INITIALS_PATTERN_1, INITIALS_PATTERN_2, INITIALS_PATTERN_3, INITIALS_PATTERN_4, INITIALS_PATTERN_6, INITIALS_PATTERN_7};
-    private static List<String> countiesList;
+    private static final FuzzyIndex counties = new FuzzyIndex(loadCounties());
 
     /**
      * Takes into the years actually available on the site
      *
-     * @return list of all URLs to download
+     * @return list of all URLs to download, up to this month
      */
 
     public List<String> listURLs() {
+        return listURLs(Calendar.getInstance());
+    }
+
+    /**
+     * @return list of all URLs to download, up to the month of the date given
+     */
+    public List<String> listURLs(Calendar now) {
         List<String> list = new ArrayList<>();
-        int currentYear = 2015; // can modify this to calculate, later if we keep using the code
+        int currentYear = now.get(Calendar.YEAR);
+        int currentMonth = now.get(Calendar.MONTH);
         for (int court = 1; court <= 4; ++court) {
             for (int year = 2003; year <= currentYear; ++year) {
-                for (String month : months) {
-                    list.add(base + "_" + court + "_" + year + "_" + month + extension);
+                int lastMonth = year == currentYear ? currentMonth : months.size() - 1;
+                for (int month = 0; month <= lastMonth; ++month) {
+                    list.add(base + "_" + court + "_" + year + "_" + months.get(month) + extension);
                 }
             }
         }
@@ -78,54 +85,94 @@ public class NYAppealUtil {
     }
 
     public static List<String> splitToSentences(String text) {
-        List<SearchResult> replacedPatterns = new ArrayList<SearchResult>();
-        // temporarily replace names with initials to placeholder so it is easier to split text to sentences
+        SentenceSpans spans = sentenceSpans(text);
+        List<String> ret = new ArrayList<String>(spans.size());
+        for (int i = 0; i < spans.size(); ++i) {
+            ret.add(spans.getSentence(i));
+        }
+        return ret;
+    }
+
+    /**
+     * Split text to sentences in one pass, without splitting inside names with initials.
+     * A sentence ends after a period, after a period followed by a quote, or after two white spaces,
+     * unless that period belongs to a name matched by one of the INITIAL_PATTERNS.
+     * Earlier patterns take precedence, and a later pattern only matches text between the names already found.
+     *
+     * @return sentence boundaries, trimmed, empty sentences are skipped
+     */
+    public static SentenceSpans sentenceSpans(String text) {
+        int length = text.length();
+        boolean[] isName = new boolean[length];
+        int[] names = new int[0]; // sorted (start, end) pairs
         for (Pattern pattern : INITIAL_PATTERNS) {
-            List<SearchResult> results = findNamesWithInitials(text, pattern);
-            for (SearchResult r : results) {
-                if (text.indexOf(r.text) >= 0) {
-                    text = text.replaceFirst(r.text, NAME_PLACEHOLDER);
-                    replacedPatterns.add(r);
+            Matcher m = pattern.matcher(text);
+            int[] found = new int[16];
+            int foundCount = 0;
+            int gapStart = 0;
+            for (int n = 0; n <= names.length; n += 2) {
+                int gapEnd = n < names.length ? names[n] : length;
+                m.region(gapStart, gapEnd);
+                while (m.find()) {
+                    if (foundCount + 2 > found.length) found = Arrays.copyOf(found, found.length * 2);
+                    found[foundCount++] = m.start();
+                    found[foundCount++] = m.end();
                 }
+                if (n < names.length) gapStart = names[n + 1];
             }
+            names = mergeRanges(names, found, foundCount);
         }
-        Collections.sort(replacedPatterns, new Comparator<SearchResult>() {
-            @Override
-            public int compare(SearchResult o1, SearchResult o2) {
-                return Integer.compare(o1.from, o2.from);
-            }
-        });
-        String[] sentences = text.split("(?<=\\.\"?|\\s{2})");
-        int currentNameIdx = 0;
-        List<String> ret = new ArrayList<String>();
-        // put names back
-        for (String sentence : sentences) {
-            int from = 0;
-            int idx;
-            while ((idx = sentence.indexOf(NAME_PLACEHOLDER, from)) >= 0) {
-                sentence = sentence.replaceFirst(NAME_PLACEHOLDER, replacedPatterns.get(currentNameIdx++).text);
-                from = idx + 1;
-            }
-            sentence = sentence.trim();
-            if (!sentence.isEmpty()) {
-                ret.add(sentence);
+        for (int n = 0; n < names.length; n += 2) {
+            Arrays.fill(isName, names[n], names[n + 1], true);
+        }
+        SentenceSpans spans = new SentenceSpans(text);
+        int start = 0;
+        for (int end = 1; end <= length; ++end) {
+            if (end == length || isSentenceEnd(text, end, isName)) {
+                int s = start;
+                int e = end;
+                while (s < e && text.charAt(s) <= ' ') ++s;
+                while (e > s && text.charAt(e - 1) <= ' ') --e;
+                if (s < e) spans.add(s, e);
+                start = end;
             }
         }
-        return ret;
+        return spans;
     }
 
-    public static List<SearchResult> findNamesWithInitials(String line, Pattern pattern) {
-        Matcher m = pattern.matcher(line);
-        int start = 0;
-        List<SearchResult> ret = new ArrayList<SearchResult>();
-        while (m.find(start)) {
-            String match = m.group();
-            int rangeStart = m.start();
-            int rangeEnd = m.end();
-            start = m.end();
-            ret.add(new SearchResult(rangeStart, rangeEnd, match));
+    private static boolean isSentenceEnd(String text, int position, boolean[] isName) {
+        char last = text.charAt(position - 1);
+        if (last == '.') {
+            return !isName[position - 1];
         }
-        return ret;
+        if (position < 2) {
+            return false;
+        }
+        char beforeLast = text.charAt(position - 2);
+        if (last == '"') {
+            return beforeLast == '.' && !isName[position - 2];
+        }
+        return isWhiteSpace(last) && isWhiteSpace(beforeLast);
+    }
+
+    // same as \s in regular expressions
+    private static boolean isWhiteSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+    }
+
+    private static int[] mergeRanges(int[] a, int[] b, int bLength) {
+        int[] merged = new int[a.length + bLength];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length || j < bLength) {
+            if (j >= bLength || (i < a.length && a[i] < b[j])) {
+                merged[k++] = a[i++];
+                merged[k++] = a[i++];
+            } else {
+                merged[k++] = b[j++];
+                merged[k++] = b[j++];
+            }
+        }
+        return merged;
     }
 
     public static boolean isProbablyName(String s) {
@@ -154,19 +201,15 @@ public class NYAppealUtil {
     }
 
     public static boolean isCounty(String s) {
-        if (countiesList == null) {
-            countiesList = loadCounties();
-        }
-        for (String county : countiesList) {
-            if (isSameStrings(county, s)) {
-                return true;
-            }
-        }
-        return false;
+        return findCounty(s) != null;
     }
 
-    private static boolean isSameStrings(String s1, String s2) {
-        return StringUtils.getLevenshteinDistance(s1.toLowerCase(), s2.toLowerCase()) <= 1;
+    /**
+     * @param s county name as found in the document, may have an OCR typo
+     * @return the county name as in the counties list, if it is within one edit of s, otherwise null
+     */
+    public static String findCounty(String s) {
+        return counties.find(s);
     }
 
     private static List<String> loadCounties() {
@@ -175,19 +218,7 @@ public class NYAppealUtil {
         	return IOUtils.readLines(stream);
         } catch (Exception e) {
             e.printStackTrace();
-            return null;
-        }
-    }
-
-    private static class SearchResult {
-
-        public int from, to;
-        public String text;
-
-        public SearchResult(int from, int to, String text) {
-            this.from = from;
-            this.to = to;
-            this.text = text;
+            return Collections.emptyList();
         }
     }
 }
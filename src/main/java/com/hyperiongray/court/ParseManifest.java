@@ -0,0 +1,109 @@
+package com.hyperiongray.court;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.io.MD5Hash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * What an incremental parse run has produced: for every input file, the hash of its content, the parser version
+ * that extracted it and the Stats counters its fields added to. The next run re-extracts only the files for which
+ * the content or the parser has changed, and counts the others again from their hits.
+ * <p/>
+ * Stored as tab separated lines: file, hash, version, hits. The hits are comma separated counter names, "-" if none.
+ */
+public class ParseManifest {
+    private static final Logger logger = LoggerFactory.getLogger(ParseManifest.class);
+    private static final char TAB = '\t';
+    private static final String NONE = "-";
+
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    public static class Entry {
+        public final String hash;
+        public final String version;
+        public final List<String> hits;
+
+        public Entry(String hash, String version, List<String> hits) {
+            this.hash = hash;
+            this.version = version;
+            this.hits = hits;
+        }
+    }
+
+    /**
+     * @return the manifest stored in the file, or an empty one if there is no file yet
+     */
+    public static ParseManifest load(File file) throws IOException {
+        ParseManifest manifest = new ParseManifest();
+        if (!file.exists()) {
+            return manifest;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("" + TAB);
+                if (parts.length != 4) {
+                    logger.warn("Skipping bad manifest line: {}", line);
+                    continue;
+                }
+                List<String> hits = NONE.equals(parts[3])
+                        ? Collections.<String>emptyList() : Arrays.asList(parts[3].split(","));
+                manifest.put(parts[0], new Entry(parts[1], parts[2], hits));
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Write the manifest next to the file first, so that an interrupted run leaves the previous one intact.
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (PrintWriter writer = new PrintWriter(new FileWriter(temp))) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                String hits = value.hits.isEmpty() ? NONE : StringUtils.join(value.hits, ',');
+                writer.print(entry.getKey() + TAB + value.hash + TAB + value.version + TAB + hits + "\n");
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not rename " + temp + " to " + file);
+        }
+    }
+
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    public void put(String name, Entry entry) {
+        entries.put(name, entry);
+    }
+
+    /**
+     * @return true if the file was extracted before from the same content by the same parser version
+     */
+    public boolean isUnchanged(String name, String hash, String version) {
+        Entry entry = entries.get(name);
+        return entry != null && entry.hash.equals(hash) && entry.version.equals(version);
+    }
+
+    public static String hash(byte[] content) {
+        return MD5Hash.digest(content).toString();
+    }
+}
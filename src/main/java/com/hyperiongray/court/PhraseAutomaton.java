@@ -0,0 +1,169 @@
+package com.hyperiongray.court;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the first match of every pattern in a few phrase sets with one pass over the text.
+ * <p/>
+ * Each pattern has to start with a literal, such as "legal" in "legal\\s*aid\\s*SOCIETY". The literals,
+ * lower-cased, go into an Aho-Corasick automaton. Wherever a literal shows up in the text, its pattern is tried
+ * at that position, so \\s*, case sensitivity and the rest of the pattern work as before, and the first
+ * position that matches gives the same match as Matcher.find() would.
+ */
+public class PhraseAutomaton {
+    private static final String META_CHARACTERS = "\\[](){}.*+?^$|";
+    private static final int ASCII = 128;
+
+    private final Pattern[][] sets;
+    // for every pattern, by its overall number: set, index in the set, length of the literal
+    private final int[] patternSet;
+    private final int[] patternIndex;
+    private final int[] literalLength;
+
+    private final int[] charClass = new int[ASCII];
+    // transitions with the failure links already followed, state x char class
+    private final int[][] next;
+    // patterns whose literal ends in the state
+    private final int[][] output;
+
+    public PhraseAutomaton(Pattern[]... sets) {
+        this.sets = sets;
+        List<String> literals = new ArrayList<>();
+        List<Integer> setOf = new ArrayList<>();
+        List<Integer> indexOf = new ArrayList<>();
+        for (int s = 0; s < sets.length; ++s) {
+            for (int i = 0; i < sets[s].length; ++i) {
+                literals.add(literalPrefix(sets[s][i]));
+                setOf.add(s);
+                indexOf.add(i);
+            }
+        }
+        int patterns = literals.size();
+        patternSet = new int[patterns];
+        patternIndex = new int[patterns];
+        literalLength = new int[patterns];
+        int classes = 1; // class 0 is for all the characters no literal has
+        for (int p = 0; p < patterns; ++p) {
+            patternSet[p] = setOf.get(p);
+            patternIndex[p] = indexOf.get(p);
+            literalLength[p] = literals.get(p).length();
+            for (char ch : literals.get(p).toCharArray()) {
+                if (charClass[ch] == 0) {
+                    charClass[ch] = classes;
+                    if (ch >= 'a' && ch <= 'z') charClass[ch - 'a' + 'A'] = classes;
+                    ++classes;
+                }
+            }
+        }
+        // trie
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(new int[classes]);
+        ends.add(new ArrayList<Integer>());
+        for (int p = 0; p < patterns; ++p) {
+            int state = 0;
+            for (char ch : literals.get(p).toCharArray()) {
+                int c = charClass[ch];
+                if (trie.get(state)[c] == 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(new int[classes]);
+                    ends.add(new ArrayList<Integer>());
+                }
+                state = trie.get(state)[c];
+            }
+            ends.get(state).add(p);
+        }
+        // failure links, breadth first, turning the trie into a complete transition table
+        next = trie.toArray(new int[trie.size()][]);
+        int[] fail = new int[next.length];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 1; c < classes; ++c) {
+            if (next[0][c] != 0) queue.add(next[0][c]);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            ends.get(state).addAll(ends.get(fail[state]));
+            for (int c = 1; c < classes; ++c) {
+                int child = next[state][c];
+                if (child != 0) {
+                    fail[child] = next[fail[state]][c];
+                    queue.add(child);
+                } else {
+                    next[state][c] = next[fail[state]][c];
+                }
+            }
+        }
+        output = new int[next.length][];
+        for (int state = 0; state < next.length; ++state) {
+            output[state] = new int[ends.get(state).size()];
+            for (int i = 0; i < output[state].length; ++i) {
+                output[state][i] = ends.get(state).get(i);
+            }
+        }
+    }
+
+    /**
+     * @param text text to search
+     * @return first match of every pattern, in the shape of the phrase sets, null where a pattern does not match
+     */
+    public String[][] firstMatches(CharSequence text) {
+        String[][] found = new String[sets.length][];
+        for (int s = 0; s < sets.length; ++s) {
+            found[s] = new String[sets[s].length];
+        }
+        boolean[] done = new boolean[patternSet.length];
+        Matcher[] matchers = new Matcher[patternSet.length];
+        int remaining = patternSet.length;
+        int length = text.length();
+        int state = 0;
+        for (int i = 0; i < length && remaining > 0; ++i) {
+            char ch = text.charAt(i);
+            state = next[state][ch < ASCII ? charClass[ch] : 0];
+            for (int p : output[state]) {
+                if (done[p]) continue;
+                if (matchers[p] == null) matchers[p] = sets[patternSet[p]][patternIndex[p]].matcher(text);
+                Matcher m = matchers[p].region(i + 1 - literalLength[p], length);
+                if (m.lookingAt()) {
+                    found[patternSet[p]][patternIndex[p]] = m.group();
+                    done[p] = true;
+                    --remaining;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the literal every match of the pattern starts with, lower case
+     */
+    static String literalPrefix(Pattern pattern) {
+        String regex = pattern.pattern();
+        if ((pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0 || regex.indexOf('|') >= 0) {
+            throw new IllegalArgumentException("Only case flags and no alternatives are supported: " + regex);
+        }
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < regex.length(); ++i) {
+            char ch = regex.charAt(i);
+            if (META_CHARACTERS.indexOf(ch) >= 0) {
+                // the last character may be repeated zero times, so it is not part of every match
+                if ((ch == '*' || ch == '?' || ch == '{') && literal.length() > 0) {
+                    literal.setLength(literal.length() - 1);
+                }
+                break;
+            }
+            if (ch >= ASCII) {
+                throw new IllegalArgumentException("Only ASCII literals are supported: " + regex);
+            }
+            literal.append(ch >= 'A' && ch <= 'Z' ? (char) (ch - 'A' + 'a') : ch);
+        }
+        if (literal.length() == 0) {
+            throw new IllegalArgumentException("Pattern does not start with a literal: " + regex);
+        }
+        return literal.toString();
+    }
+}
@@ -0,0 +1,175 @@
+package com.hyperiongray.court;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the parse output into part files named outputFile + part number + ".csv", each starting with the header.
+ * A part is closed after breakSize rows, or once it has grown to maxBytes, and the next row goes to a new part.
+ * <p/>
+ * Rows are handed over through a bounded queue to a writer thread, which keeps the current part open behind a buffer,
+ * so parsing only waits when the queue is full. Rows are expected to come from one thread.
+ */
+public class RollingCsvWriter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(RollingCsvWriter.class);
+    // mark the start of the next part and the end of the rows, compared by identity
+    private static final String NEXT_PART = new String("");
+    private static final String END = new String("");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String outputFile;
+    private final String header;
+    private final int breakSize;
+    private final long maxBytes;
+    private final Charset charset = Charset.defaultCharset();
+    private final BlockingQueue<String> queue;
+    private final Thread thread;
+
+    private volatile IOException failure;
+    // part bookkeeping is done by the thread adding rows
+    private int fileNumber;
+    private int lineCount;
+    private long byteCount;
+    // the writer thread only follows it
+    private int writerFileNumber;
+    private Writer writer;
+
+    /**
+     * @param outputFile output file prefix
+     * @param header     first line of each part, with the line break
+     * @param breakSize  maximum rows per part
+     * @param maxBytes   maximum size of a part, 0 for no limit
+     * @param queueSize  how many rows may wait to be written
+     */
+    public RollingCsvWriter(String outputFile, String header, int breakSize, long maxBytes, int queueSize) throws IOException {
+        this.outputFile = outputFile;
+        this.header = header;
+        this.breakSize = breakSize;
+        this.maxBytes = maxBytes;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        // the first part is there even if no rows come
+        openPart();
+        byteCount = header.getBytes(charset).length;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeRows();
+            }
+        }, "csv-writer");
+        thread.start();
+    }
+
+    /**
+     * Queue a row for writing, waiting for space in the queue if needed.
+     *
+     * @param row the line, with the line break
+     * @throws IOException if the writer thread has failed
+     */
+    public void write(String row) throws IOException {
+        checkFailure();
+        if (lineCount >= breakSize || (maxBytes > 0 && byteCount >= maxBytes)) {
+            ++fileNumber;
+            lineCount = 0;
+            byteCount = header.getBytes(charset).length;
+            put(NEXT_PART);
+        }
+        put(row);
+        ++lineCount;
+        if (maxBytes > 0) {
+            byteCount += row.getBytes(charset).length;
+        }
+    }
+
+    private void put(String row) throws IOException {
+        try {
+            queue.put(row);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queuing the output", e);
+        }
+    }
+
+    /**
+     * @return number of the last part, starting from 0
+     */
+    public int getFileNumber() {
+        return fileNumber;
+    }
+
+    /**
+     * Write out all queued rows, then close the current part.
+     */
+    @Override
+    public void close() throws IOException {
+        put(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the output", e);
+        }
+        checkFailure();
+    }
+
+    private void writeRows() {
+        try {
+            String row;
+            while ((row = queue.take()) != END) {
+                if (failure != null) {
+                    // keep draining, so that the producers do not block
+                    continue;
+                }
+                try {
+                    writeRow(row);
+                } catch (IOException e) {
+                    logger.error("Error writing to {}", partFile(), e);
+                    failure = e;
+                }
+            }
+            writer.close();
+        } catch (InterruptedException e) {
+            failure = new IOException("Output writer interrupted", e);
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void writeRow(String row) throws IOException {
+        if (row == NEXT_PART) {
+            writer.close();
+            ++writerFileNumber;
+            openPart();
+            logger.info("Writing parsed file {}", partFile());
+        } else {
+            writer.write(row);
+        }
+    }
+
+    private void openPart() throws IOException {
+        File parent = partFile().getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partFile()), charset), BUFFER_SIZE);
+        writer.write(header);
+    }
+
+    private File partFile() {
+        return new File(outputFile + writerFileNumber + ".csv");
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
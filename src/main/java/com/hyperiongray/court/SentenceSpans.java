@@ -0,0 +1,91 @@
+package com.hyperiongray.court;
+
+import java.util.Arrays;
+
+/**
+ * Sentence boundaries in a text, kept as (start, end) offsets rather than copies of the sentences.
+ */
+public class SentenceSpans {
+    private final String text;
+    private int[] bounds = new int[64];
+    private int size;
+
+    SentenceSpans(String text) {
+        this.text = text;
+    }
+
+    void add(int start, int end) {
+        if (2 * size == bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        bounds[2 * size] = start;
+        bounds[2 * size + 1] = end;
+        ++size;
+    }
+
+    /**
+     * @return the text the offsets point into
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return number of sentences
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return offset of the first character of the sentence
+     */
+    public int getStart(int sentence) {
+        return bounds[2 * sentence];
+    }
+
+    /**
+     * @return offset just past the last character of the sentence
+     */
+    public int getEnd(int sentence) {
+        return bounds[2 * sentence + 1];
+    }
+
+    /**
+     * @param offset offset in the text
+     * @return the first sentence that ends after the offset, size() if there is none
+     */
+    public int sentenceAt(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getEnd(middle) <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the sentence itself, this is a copy so use sparingly
+     */
+    public String getSentence(int sentence) {
+        return text.substring(getStart(sentence), getEnd(sentence));
+    }
+
+    /**
+     * @return true if the sentence contains the string, only the sentence is searched
+     */
+    public boolean contains(int sentence, String s) {
+        int last = getEnd(sentence) - s.length();
+        for (int i = getStart(sentence); i <= last; ++i) {
+            if (text.regionMatches(i, s, 0, s.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,66 @@
+package com.hyperiongray.court;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The N slowest documents of a run, with the field that took the longest in each.
+ * Documents faster than all of the kept ones are turned away without locking.
+ */
+public class SlowDocuments {
+    private static final Comparator<Document> BY_TIME = new Comparator<Document>() {
+        @Override
+        public int compare(Document o1, Document o2) {
+            return Long.compare(o1.nanos, o2.nanos);
+        }
+    };
+
+    public static class Document {
+        public final String name;
+        public final long nanos;
+        public final String field;
+        public final long fieldNanos;
+
+        public Document(String name, long nanos, String field, long fieldNanos) {
+            this.name = name;
+            this.nanos = nanos;
+            this.field = field;
+            this.fieldNanos = fieldNanos;
+        }
+    }
+
+    private final int size;
+    // fastest kept document on top
+    private final PriorityQueue<Document> slowest;
+    private volatile long threshold = -1;
+
+    public SlowDocuments(int size) {
+        this.size = size;
+        this.slowest = new PriorityQueue<>(size + 1, BY_TIME);
+    }
+
+    public void record(String name, long nanos, String field, long fieldNanos) {
+        if (nanos <= threshold) return;
+        synchronized (this) {
+            slowest.add(new Document(name, nanos, field, fieldNanos));
+            if (slowest.size() > size) {
+                slowest.poll();
+            }
+            if (slowest.size() == size) {
+                threshold = slowest.peek().nanos;
+            }
+        }
+    }
+
+    /**
+     * @return the kept documents, slowest first
+     */
+    public synchronized List<Document> getSlowest() {
+        List<Document> list = new ArrayList<>(slowest);
+        Collections.sort(list, Collections.reverseOrder(BY_TIME));
+        return list;
+    }
+}
@@ -0,0 +1,53 @@
+package com.hyperiongray.court;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One stage of a pipeline: a pool of workers behind a bounded queue. Handing work to a stage that is full waits
+ * for a slot, so a slow stage holds back the ones before it instead of piling up their output in memory.
+ */
+public class Stage {
+    private final ExecutorService pool;
+    private final Semaphore slots;
+
+    /**
+     * @param threads    workers
+     * @param queueDepth tasks that may wait for a worker, on top of those running
+     */
+    public Stage(int threads, int queueDepth) {
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.slots = new Semaphore(threads + queueDepth);
+    }
+
+    /**
+     * Queue the task, waiting while the stage is full.
+     */
+    public void submit(final Runnable task) throws InterruptedException {
+        slots.acquire();
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    slots.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Run what was submitted to the end, no more tasks are taken.
+     */
+    public void finish() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    public void shutdownNow() {
+        pool.shutdownNow();
+    }
+}
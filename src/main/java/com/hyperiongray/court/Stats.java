@@ -1,39 +1,100 @@
 package com.hyperiongray.court;
 
+import java.lang.reflect.Field;
 import java.text.DecimalFormat;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Parsing counters. Fields are updated from the parse workers, so they are atomic.
+ * Extraction times are kept per field, and for the slowest documents.
+ */
 public class Stats {
-    public int docs;
-    public int caseNumber;
-    public int filesInDir;
-    public int metadata;
-    public int judge;
-    public int judges;
-    public int court;
-    public int districtAttorneyProblem;
-    public int adaProblem;
-    public int gapDays;
-    public int civil;
-    public int criminal;
-    //    public int sexOffence;
-    public int crimes;
-    public int county;
-    public int keywords;
-    public int firstDate;
-    public int appealDate;
-    public int modeOfConviction;
+    private static final int SLOWEST_DOCS = 20;
+
+    public final AtomicInteger docs = new AtomicInteger();
+    public final AtomicInteger caseNumber = new AtomicInteger();
+    public final AtomicInteger filesInDir = new AtomicInteger();
+    public final AtomicInteger metadata = new AtomicInteger();
+    public final AtomicInteger judge = new AtomicInteger();
+    public final AtomicInteger judges = new AtomicInteger();
+    public final AtomicInteger court = new AtomicInteger();
+    public final AtomicInteger districtAttorneyProblem = new AtomicInteger();
+    public final AtomicInteger adaProblem = new AtomicInteger();
+    public final AtomicInteger gapDays = new AtomicInteger();
+    public final AtomicInteger civil = new AtomicInteger();
+    public final AtomicInteger criminal = new AtomicInteger();
+    //    public final AtomicInteger sexOffence = new AtomicInteger();
+    public final AtomicInteger crimes = new AtomicInteger();
+    public final AtomicInteger county = new AtomicInteger();
+    public final AtomicInteger keywords = new AtomicInteger();
+    public final AtomicInteger firstDate = new AtomicInteger();
+    public final AtomicInteger appealDate = new AtomicInteger();
+    public final AtomicInteger modeOfConviction = new AtomicInteger();
+    // rows kept from the previous output by an incremental run
+    public final AtomicInteger unchanged = new AtomicInteger();
+    // documents with a field over the time budget
+    public final AtomicInteger timedOutDocs = new AtomicInteger();
+    // only touched by the thread writing the output
     public int fileNumber = 0;
+    public final Map<NYAppealParse.KEYS, LatencyHistogram> fieldTimes = new EnumMap<>(NYAppealParse.KEYS.class);
+    public final SlowDocuments slowDocuments = new SlowDocuments(SLOWEST_DOCS);
+    public final Map<NYAppealParse.KEYS, AtomicInteger> fieldTimeouts = new EnumMap<>(NYAppealParse.KEYS.class);
+    // by the pattern that was running when the time was over
+    public final ConcurrentMap<String, AtomicInteger> patternTimeouts = new ConcurrentHashMap<>();
+
+    // counter names by counter, and counters by name in the order of the fields
+    private final Map<AtomicInteger, String> names = new IdentityHashMap<>();
+    private final Map<String, AtomicInteger> counters = new LinkedHashMap<>();
+
+    {
+        for (Field field : Stats.class.getFields()) {
+            if (field.getType() == AtomicInteger.class) {
+                names.put(counter(field), field.getName());
+                counters.put(field.getName(), counter(field));
+            }
+        }
+        for (NYAppealParse.KEYS key : NYAppealParse.KEYS.values()) {
+            fieldTimes.put(key, new LatencyHistogram());
+            fieldTimeouts.put(key, new AtomicInteger());
+        }
+    }
+
+    public void recordTimeout(NYAppealParse.KEYS key, String pattern) {
+        fieldTimeouts.get(key).incrementAndGet();
+        AtomicInteger count = patternTimeouts.get(pattern);
+        if (count == null) {
+            AtomicInteger first = new AtomicInteger();
+            count = patternTimeouts.putIfAbsent(pattern, first);
+            if (count == null) count = first;
+        }
+        count.incrementAndGet();
+    }
 
     private Date startDate = new Date();
 
     DecimalFormat df = new DecimalFormat("####0.0");
+    DecimalFormat msFormat = new DecimalFormat("####0.000");
 
     public String toString() {
         return
                 "Parsing success stats:\n" +
                         "Files in dir: " + filesInDir + "\n" +
                         "Docs processed : " + ratio(docs, filesInDir) + "%\n" +
+                        "Docs over the time budget: " + timedOutDocs + "\n" +
+                        "Unchanged, not parsed again: " + unchanged + "\n" +
                         "Case number: " + ratio(caseNumber, filesInDir) + "%\n" +
                         "Metadata extracted: " + ratio(metadata, filesInDir) + "%\n" +
                         "Civil: " + ratio(civil, filesInDir) + "%\n" +
@@ -52,14 +113,151 @@ public class Stats {
                         "Mode of conviction: " + ratio(modeOfConviction, criminal) + "%\n" +
                         "Keywords: " + ratio(keywords, filesInDir) + "%\n" +
                         "Number of output files: " + (fileNumber + 1) + "\n" +
-                        "Runtime: " + ((new Date().getTime() - startDate.getTime()) / 1000 + " seconds");
+                        "Runtime: " + ((new Date().getTime() - startDate.getTime()) / 1000 + " seconds") + "\n" +
+                        timesToString();
+    }
+
+    private String timesToString() {
+        StringBuilder buf = new StringBuilder("Field times, ms p50 / p99 / max / total:\n");
+        for (Map.Entry<NYAppealParse.KEYS, LatencyHistogram> entry : fieldTimes.entrySet()) {
+            LatencyHistogram times = entry.getValue();
+            if (times.getCount() == 0) continue;
+            buf.append("  ").append(entry.getKey()).append(": ")
+                    .append(ms(times.percentile(0.5))).append(" / ")
+                    .append(ms(times.percentile(0.99))).append(" / ")
+                    .append(ms(times.getMax())).append(" / ")
+                    .append(ms(times.getTotal())).append("\n");
+        }
+        if (timedOutDocs.get() > 0) {
+            buf.append("Fields over the time budget:\n");
+            for (Map.Entry<NYAppealParse.KEYS, AtomicInteger> entry : fieldTimeouts.entrySet()) {
+                if (entry.getValue().get() > 0) {
+                    buf.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+                }
+            }
+            buf.append("Patterns over the time budget:\n");
+            for (Map.Entry<String, AtomicInteger> entry : new TreeMap<>(patternTimeouts).entrySet()) {
+                buf.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+            }
+        }
+        buf.append("Slowest docs, ms:\n");
+        for (SlowDocuments.Document doc : slowDocuments.getSlowest()) {
+            buf.append("  ").append(doc.name).append(": ").append(ms(doc.nanos))
+                    .append(", ").append(doc.field).append(" ").append(ms(doc.fieldNanos)).append("\n");
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return the counters, by the name of their field
+     */
+    public Map<String, Integer> getCounters() {
+        Map<String, Integer> values = new LinkedHashMap<>();
+        for (Map.Entry<String, AtomicInteger> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        return values;
+    }
+
+    /**
+     * Add to the counters of the same name, such as those of a parse of another part of the documents.
+     * Names that are not counters are ignored.
+     */
+    public void addCounters(Map<String, ? extends Number> counts) {
+        for (Map.Entry<String, ? extends Number> entry : counts.entrySet()) {
+            AtomicInteger counter = counters.get(entry.getKey());
+            if (counter != null) {
+                counter.addAndGet(entry.getValue().intValue());
+            }
+        }
+    }
+
+    /**
+     * @return the name of the counter, which addCounters() and addHits() take
+     */
+    public String nameOf(AtomicInteger counter) {
+        return names.get(counter);
+    }
+
+    /**
+     * Add one to each counter named, as many times as it is named. Names that are not counters are ignored.
+     */
+    public void addHits(List<String> hits) {
+        for (String hit : hits) {
+            AtomicInteger counter = counters.get(hit);
+            if (counter != null) {
+                counter.incrementAndGet();
+            }
+        }
+    }
+
+    private AtomicInteger counter(Field field) {
+        try {
+            return (AtomicInteger) field.get(this);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the counters, field times and slowest documents, as JSON
+     */
+    public String toJson() {
+        JsonObject json = new JsonObject();
+        JsonObject counters = new JsonObject();
+        for (Map.Entry<String, Integer> entry : getCounters().entrySet()) {
+            counters.addProperty(entry.getKey(), entry.getValue());
+        }
+        counters.addProperty("outputFiles", fileNumber + 1);
+        json.add("counters", counters);
+        json.addProperty("runtimeMs", new Date().getTime() - startDate.getTime());
+        JsonObject fields = new JsonObject();
+        for (Map.Entry<NYAppealParse.KEYS, LatencyHistogram> entry : fieldTimes.entrySet()) {
+            LatencyHistogram times = entry.getValue();
+            if (times.getCount() == 0) continue;
+            JsonObject field = new JsonObject();
+            field.addProperty("count", times.getCount());
+            field.addProperty("p50Ms", times.percentile(0.5) / 1e6);
+            field.addProperty("p99Ms", times.percentile(0.99) / 1e6);
+            field.addProperty("maxMs", times.getMax() / 1e6);
+            field.addProperty("totalMs", times.getTotal() / 1e6);
+            fields.add(entry.getKey().toString(), field);
+        }
+        json.add("fieldTimes", fields);
+        JsonArray slowest = new JsonArray();
+        for (SlowDocuments.Document doc : slowDocuments.getSlowest()) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("file", doc.name);
+            entry.addProperty("ms", doc.nanos / 1e6);
+            entry.addProperty("slowestField", doc.field);
+            entry.addProperty("slowestFieldMs", doc.fieldNanos / 1e6);
+            slowest.add(entry);
+        }
+        json.add("slowestDocs", slowest);
+        JsonObject fieldsOver = new JsonObject();
+        for (Map.Entry<NYAppealParse.KEYS, AtomicInteger> entry : fieldTimeouts.entrySet()) {
+            if (entry.getValue().get() > 0) {
+                fieldsOver.addProperty(entry.getKey().toString(), entry.getValue().get());
+            }
+        }
+        json.add("fieldTimeouts", fieldsOver);
+        JsonObject patternsOver = new JsonObject();
+        for (Map.Entry<String, AtomicInteger> entry : new TreeMap<>(patternTimeouts).entrySet()) {
+            patternsOver.addProperty(entry.getKey(), entry.getValue().get());
+        }
+        json.add("patternTimeouts", patternsOver);
+        return new GsonBuilder().setPrettyPrinting().create().toJson(json);
+    }
+
+    private String ms(long nanos) {
+        return msFormat.format(nanos / 1e6);
     }
 
-    private String success(int problems, int total) {
-        return df.format(100. * (total - problems) / total);
+    private String success(AtomicInteger problems, AtomicInteger total) {
+        return df.format(100. * (total.get() - problems.get()) / total.get());
     }
 
-    private String ratio(int good, int total) {
-        return df.format(100. * good / total);
+    private String ratio(AtomicInteger good, AtomicInteger total) {
+        return df.format(100. * good.get() / total.get());
     }
 }
@@ -0,0 +1,49 @@
+package com.hyperiongray.court;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Files of a .tar or .tar.gz archive, in the order they were archived.
+ */
+public class TarDocumentSource extends DocumentSource {
+    private final TarArchiveInputStream tar;
+
+    public TarDocumentSource(File file, boolean gzipped) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            if (gzipped) {
+                in = new GzipCompressorInputStream(in);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        tar = new TarArchiveInputStream(in);
+    }
+
+    @Override
+    public Entry next() throws IOException {
+        TarArchiveEntry entry;
+        while ((entry = tar.getNextTarEntry()) != null) {
+            if (entry.isFile()) {
+                // the stream ends with the entry
+                return archiveEntry(entry.getName(), IOUtils.toByteArray(tar));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        tar.close();
+    }
+}
@@ -0,0 +1,18 @@
+package com.hyperiongray.court;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+/**
+ * Turns a downloaded document into the text that NYAppealParse reads.
+ */
+public interface TextExtractor {
+    // text past this is dropped, as by Tika.parseToString()
+    int MAX_LENGTH = 100 * 1000;
+
+    /**
+     * Write the text of the document out as it is extracted. The stream is read, but not closed.
+     */
+    void extract(InputStream stream, Writer text) throws IOException;
+}
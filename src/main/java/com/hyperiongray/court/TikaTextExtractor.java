@@ -0,0 +1,38 @@
+package com.hyperiongray.court;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+import org.apache.tika.Tika;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * Any type Tika knows, detected from the content: PDF, html and the rest.
+ */
+public class TikaTextExtractor implements TextExtractor {
+    private final Tika tika = new Tika();
+
+    /**
+     * Same as Tika.parseToString(), text past the maximum length is dropped, but written out as it is parsed.
+     */
+    @Override
+    public void extract(InputStream stream, Writer text) throws IOException {
+        WriteOutContentHandler handler = new WriteOutContentHandler(text, MAX_LENGTH);
+        try {
+            // TODO - we are not using metadata as yet, but it may be a good idea
+            tika.getParser().parse(stream, new BodyContentHandler(handler), new Metadata(), new ParseContext());
+        } catch (SAXException e) {
+            if (!handler.isWriteLimitReached(e)) {
+                throw new IOException("Unexpected SAX processing failure", e);
+            }
+        } catch (TikaException e) {
+            throw new IOException("Could not parse the document", e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.hyperiongray.court;
+
+import java.util.regex.Pattern;
+
+/**
+ * How long the extraction of a document, and of each of its fields, may take. Regular expressions get the text
+ * through an {@link InterruptibleCharSequence}, which checks the budget as the matcher reads it, so even
+ * a pattern that backtracks without end gives up soon after the budget runs out.
+ * <p/>
+ * A budget belongs to the document it is set on, and so to the thread parsing it.
+ */
+public class TimeBudget {
+    private final long documentNanos;
+    private final long fieldNanos;
+    private long documentDeadline;
+    private long deadline;
+
+    /**
+     * @param documentMillis time for all the fields of a document, 0 for no limit
+     * @param fieldMillis    time for each field, 0 for no limit
+     */
+    public TimeBudget(long documentMillis, long fieldMillis) {
+        this.documentNanos = documentMillis * 1000000;
+        this.fieldNanos = fieldMillis * 1000000;
+        startDocument();
+    }
+
+    public void startDocument() {
+        documentDeadline = documentNanos > 0 ? System.nanoTime() + documentNanos : Long.MAX_VALUE;
+        deadline = documentDeadline;
+    }
+
+    public void startField() {
+        deadline = fieldNanos > 0 ? Math.min(documentDeadline, System.nanoTime() + fieldNanos) : documentDeadline;
+    }
+
+    public boolean isDocumentOver() {
+        return System.nanoTime() > documentDeadline;
+    }
+
+    /**
+     * @throws TimeBudgetExceededException if the time of the field or of the document is over
+     */
+    public void check(Pattern pattern) {
+        if (System.nanoTime() > deadline) {
+            throw new TimeBudgetExceededException(pattern);
+        }
+    }
+}
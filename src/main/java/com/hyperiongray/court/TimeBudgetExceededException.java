@@ -0,0 +1,20 @@
+package com.hyperiongray.court;
+
+import java.util.regex.Pattern;
+
+/**
+ * Thrown out of a match when the time budget runs out, with the pattern that was running.
+ */
+public class TimeBudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final Pattern pattern;
+
+    public TimeBudgetExceededException(Pattern pattern) {
+        super("Time budget exceeded matching " + pattern.pattern());
+        this.pattern = pattern;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+}
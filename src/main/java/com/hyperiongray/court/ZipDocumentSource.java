@@ -0,0 +1,38 @@
+package com.hyperiongray.court;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Files of a .zip archive, in the order they were archived.
+ */
+public class ZipDocumentSource extends DocumentSource {
+    private final ZipInputStream zip;
+
+    public ZipDocumentSource(File file) throws IOException {
+        zip = new ZipInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    @Override
+    public Entry next() throws IOException {
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory()) {
+                // the stream ends with the entry
+                return archiveEntry(entry.getName(), IOUtils.toByteArray(zip));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+}
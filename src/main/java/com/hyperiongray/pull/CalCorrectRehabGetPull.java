@@ -33,6 +33,7 @@ public class CalCorrectRehabGetPull extends GetPull {
     }
     public List<String> getPdfCollection() throws IOException {
         GetPull getRequest = new GetPull();
+        getRequest.setClient(getClient());
         getRequest.setUrl(startPage);
         String pageHtml = getRequest.getResponse();
         // write is just for debugging
@@ -1,78 +1,101 @@
 package com.hyperiongray.pull;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
 /**
- * Pull the contents resulting from the HTTP PUT request.
+ * Pull the contents resulting from the HTTP GET request.
  *
  * @author mark
  */
 public class GetPull extends Pull {
+    private int statusCode;
+    private Header[] responseHeaders = new Header[0];
 
     @Override
     public String getResponse() {
         String result = "";
-        // TODO  convert to try-with-resources
-        CloseableHttpResponse response = null;
-        try {
-            CloseableHttpClient httpclient = HttpClients.createDefault();
-            HttpGet httpGet = new HttpGet(getUrl());
-            response = httpclient.execute(httpGet);
-            // The underlying HTTP connection is still held by the response object
-            // to allow the response content to be streamed directly from the network socket.
-            // In order to ensure correct deallocation of system resources
-            // the user MUST either fully consume the response content  or abort request
-            // execution by calling CloseableHttpResponse#close().
-            HttpEntity entity1 = response.getEntity();
+        try (CloseableHttpResponse response = execute()) {
             HttpEntity responseEntity = response.getEntity();
-            result = EntityUtils.toString(responseEntity);
-            EntityUtils.consume(entity1);
-        } catch (IOException e) {
-        } finally {
-            if (response != null) {
-                try {
-                    response.close();
-                } catch (IOException e) {
-                    // nothing doing, swallow the exception
-                }
+            if (responseEntity != null) {
+                result = EntityUtils.toString(responseEntity);
             }
+        } catch (IOException e) {
         }
         return result;
     }
     @Override
     public byte [] getResponseBytes() {
         byte[] result = null;
-        // TODO  convert to try-with-resources
-        CloseableHttpResponse response = null;
-        try {
-            CloseableHttpClient httpclient = HttpClients.createDefault();
-            HttpGet httpGet = new HttpGet(getUrl());
-            response = httpclient.execute(httpGet);
-            // The underlying HTTP connection is still held by the response object
-            // to allow the response content to be streamed directly from the network socket.
-            // In order to ensure correct deallocation of system resources
-            // the user MUST either fully consume the response content  or abort request
-            // execution by calling CloseableHttpResponse#close().
-            HttpEntity entity1 = response.getEntity();
+        try (CloseableHttpResponse response = execute()) {
             HttpEntity responseEntity = response.getEntity();
-            result = EntityUtils.toByteArray(responseEntity);
-            EntityUtils.consume(entity1);
+            if (responseEntity != null) {
+                result = EntityUtils.toByteArray(responseEntity);
+            }
         } catch (IOException e) {
-        } finally {
-            if (response != null) {
+        }
+        return result;
+    }
+
+    @Override
+    public InputStream getResponseStream() throws IOException {
+        final CloseableHttpResponse response = execute();
+        HttpEntity responseEntity = response.getEntity();
+        if (responseEntity == null) {
+            response.close();
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        return new FilterInputStream(responseEntity.getContent()) {
+            @Override
+            public void close() throws IOException {
                 try {
+                    super.close();
+                } finally {
                     response.close();
-                } catch (IOException e) {
-                    // nothing doing, swallow the exception
                 }
             }
+        };
+    }
+
+    /**
+     * The connection goes back to the pool when the response content is read to the end and the response is closed.
+     */
+    protected CloseableHttpResponse execute() throws IOException {
+        HttpGet httpGet = new HttpGet(getUrl());
+        for (Map.Entry<String, String> header : getHeaders().entrySet()) {
+            httpGet.setHeader(header.getKey(), header.getValue());
         }
-        return result;
+        CloseableHttpResponse response = getClient().execute(httpGet);
+        statusCode = response.getStatusLine().getStatusCode();
+        responseHeaders = response.getAllHeaders();
+        return response;
+    }
+
+    /**
+     * @return the status of the last response, 0 if the request failed
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the first value of the header in the last response, null if it was not there
+     */
+    public String getResponseHeader(String name) {
+        for (Header header : responseHeaders) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
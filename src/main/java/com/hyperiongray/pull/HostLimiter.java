@@ -0,0 +1,52 @@
+package com.hyperiongray.pull;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps the number of requests in flight to each host, however many threads are pulling.
+ */
+public class HostLimiter {
+    private final int perHost;
+    private final ConcurrentMap<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * @param perHost requests allowed at the same time to one host
+     */
+    public HostLimiter(int perHost) {
+        this.perHost = perHost;
+    }
+
+    /**
+     * Wait for a free slot for the host of the url. Every acquire must be followed by a release.
+     */
+    public void acquire(String url) throws InterruptedException {
+        semaphore(url).acquire();
+    }
+
+    public void release(String url) {
+        semaphore(url).release();
+    }
+
+    private Semaphore semaphore(String url) {
+        String host = host(url);
+        Semaphore semaphore = hosts.get(host);
+        if (semaphore == null) {
+            Semaphore created = new Semaphore(perHost, true);
+            semaphore = hosts.putIfAbsent(host, created);
+            if (semaphore == null) semaphore = created;
+        }
+        return semaphore;
+    }
+
+    static String host(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+}
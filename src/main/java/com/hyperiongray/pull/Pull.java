@@ -1,5 +1,9 @@
 package com.hyperiongray.pull;
 
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -13,6 +17,7 @@ public abstract class Pull {
     private String password;
     private Map <String, String> headers = new HashMap<> ();
     private String postBody;
+    private CloseableHttpClient client;
 
     /**
      *
@@ -26,6 +31,14 @@ public abstract class Pull {
      */
     public abstract byte[] getResponseBytes();
 
+    /**
+     * The body as it comes from the network, for documents that should not be held in memory whole.
+     * Closing the stream ends the request.
+     *
+     * @return response from the GET pull, streamed
+     */
+    public abstract InputStream getResponseStream() throws IOException;
+
     /**
      * @return the url
      */
@@ -91,4 +104,18 @@ public abstract class Pull {
     public void setPostBody(String postBody) {
         this.postBody = postBody;
     }
+
+    /**
+     * @return the client to pull with, the shared one unless another was set
+     */
+    public CloseableHttpClient getClient() {
+        return client != null ? client : PullClient.shared();
+    }
+
+    /**
+     * @param client the client to pull with, it is not closed by the pull
+     */
+    public void setClient(CloseableHttpClient client) {
+        this.client = client;
+    }
 }
@@ -0,0 +1,54 @@
+package com.hyperiongray.pull;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * HTTP clients for the pulls. One client is meant to serve all the pulls of a crawl, so connections are pooled and
+ * kept alive between requests, instead of a new connection for each document.
+ * Responses in gzip or deflate are decoded by the client, which also asks for them.
+ */
+public class PullClient {
+    public static final int CONNECT_TIMEOUT = 10000; // milliseconds
+    public static final int SOCKET_TIMEOUT = 60000; // milliseconds, between two packets of the response
+
+    private static CloseableHttpClient shared;
+
+    /**
+     * @param maxConnections connections open at the same time, for all hosts
+     * @param maxPerHost     connections open at the same time to one host
+     */
+    public static CloseableHttpClient create(int maxConnections, int maxPerHost) {
+        return create(maxConnections, maxPerHost, CONNECT_TIMEOUT, SOCKET_TIMEOUT);
+    }
+
+    public static CloseableHttpClient create(int maxConnections, int maxPerHost, int connectTimeout, int socketTimeout) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxPerHost);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .build();
+        // content compression is on by default in the builder
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    /**
+     * @return the client for pulls that were not given one, created on first use and never closed
+     */
+    public static synchronized CloseableHttpClient shared() {
+        if (shared == null) {
+            shared = create(20, 4);
+        }
+        return shared;
+    }
+}
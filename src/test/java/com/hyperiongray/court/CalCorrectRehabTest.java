@@ -0,0 +1,52 @@
+package com.hyperiongray.court;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CalCorrectRehabTest {
+
+    @Test
+    public void testReportMonth() {
+        assertEquals("2015-01", CalCorrectRehab.reportMonth("Monthly_Tpop1a/TPOP1Ad1501.pdf"));
+        assertEquals("1999-12", CalCorrectRehab.reportMonth("TPOP1Ad9912.PDF"));
+        assertEquals("", CalCorrectRehab.reportMonth("TPOP1Ad1513.pdf"));
+        assertEquals("", CalCorrectRehab.reportMonth("TPOP1A_archive.pdf"));
+    }
+
+    @Test
+    public void testFindStats() {
+        CalCorrectRehab.Report report = new CalCorrectRehab.Report("TPOP1Ad1501.pdf");
+        CalCorrectRehab.findStats("TOTAL IN-CUSTODY  1,117,042\nIN-STATE 116,010\nPAROLE 44,528\n"
+                + "TOTAL IN-CUSTODY 5\n", report);
+        // the first figure is the one in the summary table
+        assertEquals(Long.valueOf(1117042), report.populations[0]);
+        assertEquals(Long.valueOf(116010), report.populations[1]);
+        assertEquals(Long.valueOf(44528), report.populations[6]);
+        assertNull(report.populations[2]);
+        assertEquals(Arrays.asList("File: TPOP1Ad1501.pdf", "TOTAL IN-CUSTODY  1,117,042", "TOTAL IN-CUSTODY 5",
+                "IN-STATE 116,010", "PAROLE 44,528"), report.lines);
+    }
+
+    @Test
+    public void testNewReports() throws IOException {
+        File file = new File("test-output/cal/series.csv.state");
+        FileUtils.deleteQuietly(file.getParentFile());
+        file.getParentFile().mkdirs();
+        CrawlFrontier state = new CrawlFrontier(file, true);
+        state.fetched("TPOP1Ad1501.pdf", CrawlFrontier.OK, 100, "hash");
+        state.fetched("TPOP1Ad1502.pdf", CrawlFrontier.ERROR, 0, CrawlFrontier.NONE);
+        state.close();
+        state = new CrawlFrontier(file, true);
+        // the report in the series already is left out, the one that failed is tried again, each once
+        assertEquals(Arrays.asList("TPOP1Ad1503.pdf", "TPOP1Ad1502.pdf"), CalCorrectRehab.newReports(
+                Arrays.asList("TPOP1Ad1503.pdf", "TPOP1Ad1502.pdf", "TPOP1Ad1501.pdf", "TPOP1Ad1503.pdf"), state));
+        state.close();
+    }
+}
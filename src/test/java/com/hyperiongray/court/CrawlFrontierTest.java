@@ -0,0 +1,65 @@
+package com.hyperiongray.court;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CrawlFrontierTest {
+    private static final String INDEX = "http://www.nycourts.gov/reporter/3dseries/2015/index.htm";
+    private static final String A = "http://www.nycourts.gov/reporter/3dseries/2015/2015_00001.htm";
+    private static final String B = "http://www.nycourts.gov/reporter/3dseries/2015/2015_00002.htm";
+    private static final String C = "http://www.nycourts.gov/reporter/3dseries/2015/2015_00003.htm";
+
+    private final File file = new File("test-output/frontier/frontier.log");
+
+    @Before
+    public void setUp() throws IOException {
+        FileUtils.deleteQuietly(file.getParentFile());
+        file.getParentFile().mkdirs();
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        CrawlFrontier frontier = new CrawlFrontier(file, false);
+        frontier.expanded(INDEX, new CrawlFrontier.Index("\"etag\"", CrawlFrontier.NONE, "hash"), Arrays.asList(A, B, C));
+        frontier.fetched(A, CrawlFrontier.OK, 100, "hashA");
+        frontier.fetched(B, CrawlFrontier.ERROR, 0, CrawlFrontier.NONE);
+        frontier.close();
+        // the crawl died in the middle of a line
+        FileUtils.writeStringToFile(file, "doc\t" + C + "\tok\t12", true);
+
+        frontier = new CrawlFrontier(file, true);
+        // failed and never finished downloads are pulled again, in the order they were found
+        assertEquals(Arrays.asList(B, C), frontier.getPending());
+        assertEquals("\"etag\"", frontier.getIndex(INDEX).etag);
+        assertEquals(100, frontier.get(A).size);
+        assertNull(frontier.get(C));
+        frontier.fetched(B, CrawlFrontier.OK, 200, "hashB");
+        frontier.close();
+
+        // the later line of B wins
+        frontier = new CrawlFrontier(file, true);
+        assertEquals(Arrays.asList(C), frontier.getPending());
+        assertEquals(CrawlFrontier.OK, frontier.get(B).status);
+        frontier.close();
+    }
+
+    @Test
+    public void testNewCrawl() throws IOException {
+        CrawlFrontier frontier = new CrawlFrontier(file, false);
+        frontier.expanded(INDEX, new CrawlFrontier.Index(CrawlFrontier.NONE, CrawlFrontier.NONE, "hash"), Arrays.asList(A));
+        frontier.close();
+        // without resume the log starts over
+        frontier = new CrawlFrontier(file, false);
+        assertEquals(0, frontier.getPending().size());
+        assertNull(frontier.getIndex(INDEX));
+        frontier.close();
+    }
+}
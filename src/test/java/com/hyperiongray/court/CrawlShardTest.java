@@ -0,0 +1,51 @@
+package com.hyperiongray.court;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CrawlShardTest {
+
+    @Test
+    public void testShardsCoverIndexPagesOnce() {
+        List<String> urls = new NYAppealUtil().listURLs();
+        CrawlShard[] shards = {CrawlShard.parse("0/3"), CrawlShard.parse("1/3"), CrawlShard.parse("2/3")};
+        int[] sizes = new int[shards.length];
+        for (String url : urls) {
+            int taken = 0;
+            for (int i = 0; i < shards.length; ++i) {
+                if (shards[i].takes(url)) {
+                    ++taken;
+                    ++sizes[i];
+                }
+            }
+            assertEquals(url, 1, taken);
+            assertTrue(CrawlShard.ALL.takes(url));
+        }
+        for (int size : sizes) {
+            assertTrue(size > urls.size() / 4);
+        }
+    }
+
+    @Test
+    public void testSampleIsStable() {
+        int sampled = 0;
+        for (int i = 0; i < 10000; ++i) {
+            String url = "http://www.nycourts.gov/reporter/3dseries/2015/2015_" + i + ".htm";
+            boolean inSample = CrawlShard.sampled(url, 0.1f);
+            assertEquals(inSample, CrawlShard.sampled(url, 0.1f));
+            // a larger sample holds the smaller one
+            assertTrue(!inSample || CrawlShard.sampled(url, 0.5f));
+            if (inSample) ++sampled;
+        }
+        assertTrue("" + sampled, sampled > 900 && sampled < 1100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongShard() {
+        CrawlShard.parse("3/3");
+    }
+}
@@ -0,0 +1,43 @@
+package com.hyperiongray.court;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.hyperiongray.court.DocumentContext.Zone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentContextTest {
+
+    @Test
+    public void testZones() throws IOException {
+        String text = FileUtils.readFileToString(new File("test-data/ny_appeals/2015_01013.htm.txt"), "UTF-8");
+        DocumentContext doc = new DocumentContext("2015_01013.htm.txt", text);
+        assertTrue(doc.isZoned());
+        assertEquals(0, doc.getZoneStart(Zone.CAPTION));
+        assertTrue(zone(doc, Zone.CAPTION).contains("People v Moore"));
+        assertTrue(zone(doc, Zone.COUNSEL).startsWith("Frank J. Nebush, Jr., Public Defender"));
+        assertTrue(zone(doc, Zone.COUNSEL).contains("District Attorney"));
+        assertTrue(zone(doc, Zone.BODY).startsWith("Appeal from a judgment of the Oneida County Court"));
+        assertTrue(zone(doc, Zone.PANEL).contains("Present—Scudder"));
+        assertFalse(zone(doc, Zone.BODY).contains("Present—"));
+        assertEquals(text.length(), doc.getZoneEnd(Zone.PANEL));
+    }
+
+    @Test
+    public void testNotZoned() {
+        DocumentContext doc = new DocumentContext("none", "Nothing to see here.\nReally.");
+        assertFalse(doc.isZoned());
+        assertEquals(0, doc.getZoneStart(Zone.PANEL));
+        assertEquals(doc.getText().length(), doc.getZoneEnd(Zone.CAPTION));
+    }
+
+    private String zone(DocumentContext doc, Zone zone) {
+        return doc.getText().substring(doc.getZoneStart(zone), doc.getZoneEnd(zone));
+    }
+}
@@ -0,0 +1,109 @@
+package com.hyperiongray.court;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class HtmlTextExtractorTest {
+    private static final String FALLBACK = "from the fallback";
+
+    /**
+     * The parser reads the text of the collected pages, so it has to be the text Tika gives, to the character.
+     */
+    @Test
+    public void testSameAsTika() throws IOException {
+        File[] pages = new File("test-data/ny_html").listFiles();
+        assertNotNull(pages);
+        assertTrue(pages.length > 0);
+        HtmlTextExtractor html = new HtmlTextExtractor(new TikaTextExtractor());
+        TikaTextExtractor tika = new TikaTextExtractor();
+        for (File page : pages) {
+            assertEquals(page.getName(), extract(tika, page), extract(html, page));
+        }
+    }
+
+    @Test
+    public void testBlocks() throws IOException {
+        String page = "<html><head><meta charset=\"utf-8\"><title>x</title><style>p {}</style></head><body><p>Title"
+                + "<ul><li>one<li>two</ul><p>three<br>four<table><tr><td>cell<td></table>"
+                + "<p>a &amp; b &nbsp;&#8212; &lt;c&gt;</body></html>";
+        StringWriter tika = new StringWriter();
+        new TikaTextExtractor().extract(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), tika);
+        assertTrue(tika.toString().contains("\tone\n\ttwo\n"));
+        assertEquals(tika.toString(), extract(page));
+    }
+
+    /**
+     * Some pages have their lines ended with \r\n, which is white space like \n.
+     */
+    @Test
+    public void testLineBreaks() throws IOException {
+        String page = "<html>\r\n<head><meta charset=\"utf-8\"><title>x</title></head>\r\n<body>\r\n"
+                + "<p>one\r\ntwo</p>\r\n<table>\r\n<tr>\r\n<td>cell\r\n</td></tr></table>\r\n</body></html>\r\n";
+        StringWriter tika = new StringWriter();
+        new TikaTextExtractor().extract(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), tika);
+        assertEquals(tika.toString(), extract(page));
+    }
+
+    /**
+     * A comment ends at the first "-->", even when more dashes come before it.
+     */
+    @Test
+    public void testCommentEnds() throws IOException {
+        String page = "<html><head><meta charset=\"utf-8\"><title>x</title></head><body><p>one<!-- a --->two"
+                + "<!---->three<!-- b ---->four</p></body></html>";
+        StringWriter tika = new StringWriter();
+        new TikaTextExtractor().extract(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), tika);
+        assertTrue(tika.toString().contains("onetwothreefour"));
+        assertEquals(tika.toString(), extract(page));
+    }
+
+    /**
+     * A page with no charset has it guessed by the fallback, even if its first bytes are plain ASCII and the
+     * windows-1252 ones come later.
+     */
+    @Test
+    public void testNoCharset() throws IOException {
+        File page = new File("test-data/ny_html/2015_01018_nocharset.htm");
+        String text = extract(new HtmlTextExtractor(new TikaTextExtractor()), page);
+        assertTrue(text.contains("\u00a7") && text.contains("\u2014"));
+        assertEquals(FALLBACK, extract("<html><head><title>x</title></head><body><p>no charset</p></body></html>"));
+    }
+
+    @Test
+    public void testFallback() throws IOException {
+        assertEquals(FALLBACK, extract("%PDF-1.4 not html"));
+        assertEquals(FALLBACK, extract("plain text, < and all"));
+    }
+
+    private String extract(TextExtractor extractor, File page) throws IOException {
+        try (InputStream stream = new FileInputStream(page)) {
+            StringWriter text = new StringWriter();
+            extractor.extract(stream, text);
+            return text.toString();
+        }
+    }
+
+    private String extract(String page) throws IOException {
+        HtmlTextExtractor extractor = new HtmlTextExtractor(new TextExtractor() {
+            @Override
+            public void extract(InputStream stream, Writer text) throws IOException {
+                text.write(FALLBACK);
+            }
+        });
+        StringWriter text = new StringWriter();
+        extractor.extract(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), text);
+        return text.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package com.hyperiongray.court;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long nanos = 0; nanos < 100000; ++nanos) {
+            int bucket = LatencyHistogram.bucket(nanos);
+            assertTrue(nanos <= LatencyHistogram.highest(bucket));
+            assertTrue(bucket == 0 || nanos > LatencyHistogram.highest(bucket - 1));
+        }
+        assertTrue(LatencyHistogram.bucket(Long.MAX_VALUE) < 64 * 4);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1000; ++nanos) {
+            histogram.record(nanos * 1000);
+        }
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(1000, histogram.getCount());
+        long p50 = histogram.percentile(0.5);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 5 / 4);
+        assertEquals(1000000, histogram.percentile(1));
+    }
+}
@@ -0,0 +1,54 @@
+package com.hyperiongray.court;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NYAppealMergeTest {
+    private static final String A = "http://www.nycourts.gov/reporter/3dseries/2015/2015_00001.htm";
+    private static final String B = "http://www.nycourts.gov/reporter/3dseries/2015/2015_00002.htm";
+
+    @Test
+    public void testMerge() throws IOException {
+        File dir = new File("test-output/merge");
+        FileUtils.deleteQuietly(dir);
+        File shard0 = new File(dir, "shard0");
+        File shard1 = new File(dir, "shard1");
+        File output = new File(dir, "all");
+        write(shard0, "html/2015_00001.htm", "one");
+        write(shard0, "txt/2015_00001.htm.txt", "one");
+        write(shard1, "html/2015_00001.htm", "one");
+        write(shard1, "html/2015_00002.htm", "two");
+        write(shard1, "txt/2015_00002.htm.txt", "two");
+        // a file that is already there is kept
+        write(output, "txt/2015_00002.htm.txt", "two, parsed earlier");
+        // the crawl of shard 0 stopped in the middle of a line
+        write(shard0, NYAppealCollect.FRONTIER, "doc\t" + A + "\tok\t3\thashA\ndoc\t" + B + "\tok");
+        write(shard1, NYAppealCollect.FRONTIER, "doc\t" + B + "\tok\t3\thashB\n");
+
+        NYAppealMerge merge = new NYAppealMerge(new String[] {shard0.getPath(), shard1.getPath()}, output.getPath());
+        merge.merge();
+        assertEquals(3, merge.getFilesCopied());
+        assertEquals(1, merge.getDuplicates());
+        assertEquals(1, merge.getConflicts());
+        assertEquals("two, parsed earlier", FileUtils.readFileToString(new File(output, "txt/2015_00002.htm.txt")));
+
+        CrawlFrontier frontier = new CrawlFrontier(new File(output, NYAppealCollect.FRONTIER), true);
+        assertEquals(CrawlFrontier.OK, frontier.get(A).status);
+        assertEquals("hashB", frontier.get(B).hash);
+        frontier.close();
+        assertEquals(Arrays.asList("one", "one", "two"), Arrays.asList(
+                FileUtils.readFileToString(new File(output, "html/2015_00001.htm")),
+                FileUtils.readFileToString(new File(output, "txt/2015_00001.htm.txt")),
+                FileUtils.readFileToString(new File(output, "html/2015_00002.htm"))));
+    }
+
+    private void write(File dir, String name, String content) throws IOException {
+        FileUtils.writeStringToFile(new File(dir, name), content);
+    }
+}
@@ -0,0 +1,57 @@
+package com.hyperiongray.court;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NYAppealParseJobTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * The job in local mode gives the rows of NYAppealParse, sorted by file name.
+     */
+    @Test
+    public void testSameAsNYAppealParse() throws Exception {
+        Configuration conf = new Configuration();
+        conf.set("mapred.job.tracker", "local");
+        conf.set("fs.default.name", "file:///");
+        Path packed = new Path(tmp.getRoot().getAbsolutePath(), "docs.seq");
+        try (DocumentSource source = DocumentSource.open("test-data/ny_appeals")) {
+            NYAppealPack.pack(source, packed, conf);
+        }
+        NYAppealParseJob job = new NYAppealParseJob();
+        job.setConf(conf);
+        File output = new File(tmp.getRoot(), "parsed");
+        assertTrue(job.parse(packed.toString(), new Path(output.getAbsolutePath()), 1));
+
+        NYAppealParse parser = new NYAppealParse();
+        File[] files = new File("test-data/ny_appeals").listFiles();
+        Arrays.sort(files);
+        StringBuilder expected = new StringBuilder(parser.header());
+        int txt = 0;
+        for (File file : files) {
+            if (!file.getName().endsWith("txt")) continue;
+            expected.append(parser.formatRow(file.getName(), FileUtils.readFileToString(file, Charset.defaultCharset().name())));
+            ++txt;
+        }
+        assertEquals(expected.toString(), FileUtils.readFileToString(new File(output, "part-r-00000"), "UTF-8"));
+        assertEquals(files.length, job.getStats().filesInDir.get());
+        assertEquals(txt, job.getStats().docs.get());
+        assertEquals(txt, job.getStats().metadata.get());
+        assertEquals(parser.getStats().caseNumber.get(), job.getStats().caseNumber.get());
+    }
+}
@@ -1,15 +1,26 @@
 package com.hyperiongray.court;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * Created by mark on 5/20/15.
  */
@@ -39,4 +50,106 @@ public class NYAppealParseTest {
         String [] args = {"-i", "test-data/ny_appeals", "-o", "test-output/parse"};
         NYAppealParse.main(args);
     }
-}
\ No newline at end of file
+    @Test
+    public void testParallelParse() throws IOException {
+        System.out.println("testParallelParse");
+        NYAppealParse.main(new String[] {"-i", "test-data/ny_appeals", "-o", "test-output/sequential/parse"});
+        NYAppealParse.main(new String[] {"-i", "test-data/ny_appeals", "-o", "test-output/parallel/parse", "-t", "4"});
+        assertEquals(FileUtils.readFileToString(new File("test-output/sequential/parse0.csv")),
+                FileUtils.readFileToString(new File("test-output/parallel/parse0.csv")));
+    }
+    @Test
+    public void testIncrementalParse() throws IOException {
+        System.out.println("testIncrementalParse");
+        File input = new File("test-output/incremental-input");
+        FileUtils.deleteQuietly(input);
+        FileUtils.copyDirectory(new File("test-data/ny_appeals"), input);
+        FileUtils.deleteQuietly(new File("test-output/incremental/parse.manifest"));
+        String[] args = {"-i", input.getPath(), "-o", "test-output/incremental/parse", "-n"};
+        NYAppealParse.main(args);
+        // one file changed, one gone
+        File[] files = input.listFiles();
+        Arrays.sort(files);
+        FileUtils.writeStringToFile(files[0], FileUtils.readFileToString(files[0]) + "\naffirmed\n");
+        files[1].delete();
+        NYAppealParse.main(args);
+        NYAppealParse.main(new String[] {"-i", input.getPath(), "-o", "test-output/full/parse"});
+        assertEquals(FileUtils.readFileToString(new File("test-output/full/parse0.csv")),
+                FileUtils.readFileToString(new File("test-output/incremental/parse0.csv")));
+        // the rows kept are counted as if parsed again
+        JsonObject full = counters("test-output/full/parse.stats.json");
+        JsonObject incremental = counters("test-output/incremental/parse.stats.json");
+        assertEquals(files.length - 2, incremental.get("unchanged").getAsInt());
+        full.remove("unchanged");
+        incremental.remove("unchanged");
+        assertEquals(full, incremental);
+    }
+
+    private JsonObject counters(String statsFile) throws IOException {
+        return new JsonParser().parse(FileUtils.readFileToString(new File(statsFile))).getAsJsonObject()
+                .getAsJsonObject("counters");
+    }
+    @Test
+    public void testArchiveParse() throws IOException {
+        System.out.println("testArchiveParse");
+        File archive = new File("test-output/ny_appeals.zip");
+        archive.getParentFile().mkdirs();
+        File[] files = new File("test-data/ny_appeals").listFiles();
+        Arrays.sort(files);
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (File file : files) {
+                zip.putNextEntry(new ZipEntry("ny_appeals/" + file.getName()));
+                FileUtils.copyFile(file, zip);
+            }
+        }
+        NYAppealParse.main(new String[] {"-i", "test-data/ny_appeals", "-o", "test-output/directory/parse"});
+        NYAppealParse.main(new String[] {"-i", archive.getPath(), "-o", "test-output/archive/parse"});
+        assertEquals(FileUtils.readFileToString(new File("test-output/directory/parse0.csv")),
+                FileUtils.readFileToString(new File("test-output/archive/parse0.csv")));
+    }
+    @Test
+    public void testTarArchiveParse() throws IOException {
+        System.out.println("testTarArchiveParse");
+        File archive = new File("test-output/ny_appeals.tar.gz");
+        archive.getParentFile().mkdirs();
+        File[] files = new File("test-data/ny_appeals").listFiles();
+        Arrays.sort(files);
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(
+                new GzipCompressorOutputStream(new FileOutputStream(archive)))) {
+            // the directory and the link are not documents, and are skipped
+            tar.putArchiveEntry(new TarArchiveEntry("ny_appeals/"));
+            tar.closeArchiveEntry();
+            TarArchiveEntry link = new TarArchiveEntry("ny_appeals/latest", TarConstants.LF_SYMLINK);
+            link.setLinkName(files[0].getName());
+            tar.putArchiveEntry(link);
+            tar.closeArchiveEntry();
+            for (File file : files) {
+                tar.putArchiveEntry(new TarArchiveEntry(file, "ny_appeals/" + file.getName()));
+                FileUtils.copyFile(file, tar);
+                tar.closeArchiveEntry();
+            }
+        }
+        NYAppealParse.main(new String[] {"-i", "test-data/ny_appeals", "-o", "test-output/directory/parse"});
+        NYAppealParse.main(new String[] {"-i", archive.getPath(), "-o", "test-output/tar/parse"});
+        assertEquals(FileUtils.readFileToString(new File("test-output/directory/parse0.csv")),
+                FileUtils.readFileToString(new File("test-output/tar/parse0.csv")));
+    }
+    @Test(expected = IOException.class)
+    public void testArchiveNamesCollide() throws IOException {
+        File archive = new File("test-output/ny_appeals_collide.zip");
+        archive.getParentFile().mkdirs();
+        File file = new File("test-data/ny_appeals").listFiles()[0];
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (String dir : new String[] {"a/", "b/"}) {
+                zip.putNextEntry(new ZipEntry(dir + file.getName()));
+                FileUtils.copyFile(file, zip);
+            }
+        }
+        // both would be the same row of the output
+        try (DocumentSource source = DocumentSource.open(archive.getPath())) {
+            while (source.next() != null) {
+                logger.debug("Read an entry");
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.hyperiongray.court;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NYAppealPipelineTest {
+
+    /**
+     * The saved pages go through the stages with many threads, and the rows come out as NYAppealParse makes them
+     * from the text, in the order of the pages.
+     */
+    @Test
+    public void testLocalPages() throws IOException {
+        System.out.println("testLocalPages");
+        NYAppealPipeline.main(new String[] {"-i", "test-data/ny_html", "-o", "test-output/pipeline/parse",
+                "-d", "4", "-x", "4", "-e", "4", "-q", "1"});
+        NYAppealParse parser = new NYAppealParse();
+        TextExtractor textExtractor = new HtmlTextExtractor(new TikaTextExtractor());
+        StringBuilder expected = new StringBuilder(parser.header());
+        File[] pages = new File("test-data/ny_html").listFiles();
+        Arrays.sort(pages);
+        for (File page : pages) {
+            StringWriter text = new StringWriter();
+            try (InputStream in = new FileInputStream(page)) {
+                textExtractor.extract(in, text);
+            }
+            expected.append(parser.formatRow(page.getName() + ".txt", text.toString()));
+        }
+        assertEquals(expected.toString(), FileUtils.readFileToString(new File("test-output/pipeline/parse0.csv")));
+        JsonObject counters = new JsonParser().parse(FileUtils.readFileToString(
+                new File("test-output/pipeline/parse.stats.json"))).getAsJsonObject().getAsJsonObject("counters");
+        assertEquals(pages.length, counters.get("metadata").getAsInt());
+    }
+}
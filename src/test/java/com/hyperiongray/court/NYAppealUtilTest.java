@@ -0,0 +1,92 @@
+package com.hyperiongray.court;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NYAppealUtilTest {
+
+    @Test
+    public void testSentencesSameAsBefore() throws IOException {
+        System.out.println("testSentencesSameAsBefore");
+        File[] files = new File("test-data/ny_appeals").listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            String textFlow = new DocumentContext(file.getName(), FileUtils.readFileToString(file)).getTextFlow();
+            assertEquals(file.getName(), legacySplitToSentences(textFlow), NYAppealUtil.splitToSentences(textFlow));
+        }
+    }
+
+    @Test
+    public void testNamesWithRegexCharacters() {
+        // the period in the name used to match the comma of the first occurrence
+        List<String> sentences = NYAppealUtil.splitToSentences("Heard by Smith, JJ, and Smith, JJ. Decided.");
+        assertEquals(Arrays.asList("Heard by Smith, JJ, and Smith, JJ. Decided."), sentences);
+    }
+
+    // the replace-and-restore implementation the segmenter replaced, kept as the reference
+    private static final Pattern[] INITIAL_PATTERNS = {
+            Pattern.compile("(\\w{3,}, JR\\., [A-Z]\\.[A-Z]\\.)", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("(\\w{3,}, [A-Z]\\.[A-Z]\\.)"),
+            Pattern.compile("([A-Z]\\. \\w{3,}, [A-Z]{2,2}\\.)"),
+            Pattern.compile("(\\w{3,}, [A-Z]{2,2}\\.)"),
+            Pattern.compile("(\\w{3,} JR\\.)", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("(\\w{3,} [A-Z]\\. \\w{3,})", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("(\\w{3,} \\w{3,}, J\\.)", Pattern.CASE_INSENSITIVE)};
+
+    private static List<String> legacySplitToSentences(String text) {
+        final String placeholder = "%name%";
+        List<int[]> from = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (Pattern pattern : INITIAL_PATTERNS) {
+            List<String> found = new ArrayList<>();
+            List<Integer> foundFrom = new ArrayList<>();
+            Matcher m = pattern.matcher(text);
+            int start = 0;
+            while (m.find(start)) {
+                found.add(m.group());
+                foundFrom.add(m.start());
+                start = m.end();
+            }
+            for (int i = 0; i < found.size(); ++i) {
+                if (text.indexOf(found.get(i)) >= 0) {
+                    text = text.replaceFirst(found.get(i), placeholder);
+                    from.add(new int[] {foundFrom.get(i), names.size()});
+                    names.add(found.get(i));
+                }
+            }
+        }
+        Collections.sort(from, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                return Integer.compare(o1[0], o2[0]);
+            }
+        });
+        int currentNameIdx = 0;
+        List<String> ret = new ArrayList<>();
+        for (String sentence : text.split("(?<=\\.\"?|\\s{2})")) {
+            int fromIdx = 0;
+            int idx;
+            while ((idx = sentence.indexOf(placeholder, fromIdx)) >= 0) {
+                sentence = sentence.replaceFirst(placeholder, names.get(from.get(currentNameIdx++)[1]));
+                fromIdx = idx + 1;
+            }
+            sentence = sentence.trim();
+            if (!sentence.isEmpty()) {
+                ret.add(sentence);
+            }
+        }
+        return ret;
+    }
+}
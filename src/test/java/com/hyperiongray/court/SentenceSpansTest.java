@@ -0,0 +1,34 @@
+package com.hyperiongray.court;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SentenceSpansTest {
+
+    /**
+     * Each sentence is searched on its own, so asking all of them for a phrase only the last one has is linear.
+     */
+    @Test
+    public void testContainsStopsAtSentenceEnd() {
+        int count = 50000;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            text.append("The appeal is decided. ");
+        }
+        text.append("All concur except Smith, J.");
+        SentenceSpans sentences = NYAppealUtil.sentenceSpans(text.toString());
+        assertEquals(count + 1, sentences.size());
+        long start = System.currentTimeMillis();
+        int found = 0;
+        for (int i = 0; i < sentences.size(); ++i) {
+            if (sentences.contains(i, "concur except")) {
+                assertEquals(count, i);
+                ++found;
+            }
+        }
+        assertEquals(1, found);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+}
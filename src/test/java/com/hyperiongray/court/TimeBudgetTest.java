@@ -0,0 +1,31 @@
+package com.hyperiongray.court;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimeBudgetTest {
+
+    @Test
+    public void testRunawayPatternIsStopped() {
+        // backtracks for about a minute without the budget
+        Pattern pattern = Pattern.compile("(.*a){20}b");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 30; ++i) text.append('a');
+        TimeBudget budget = new TimeBudget(0, 50);
+        budget.startField();
+        DocumentContext doc = new DocumentContext("runaway", text.toString(), budget);
+        long start = System.currentTimeMillis();
+        try {
+            doc.matcher(pattern, doc.getText()).find();
+            fail("The match should have run out of time");
+        } catch (TimeBudgetExceededException e) {
+            assertSame(pattern, e.getPattern());
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+}